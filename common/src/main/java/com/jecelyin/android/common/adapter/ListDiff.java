@@ -0,0 +1,139 @@
+package com.jecelyin.android.common.adapter;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按数据的键比较新旧列表，得到把旧列表变为新列表的插入、删除和修改操作，
+ * 用于代替 notifyDataSetChanged，只刷新有变化的行。
+ * 一次遍历完成，移动的数据按删除加插入处理。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+class ListDiff {
+    static final int INSERT = 1;
+    static final int REMOVE = 2;
+    static final int CHANGE = 3;
+
+    interface Callback<T> {
+        /** 为null的数据不与任何数据匹配，按删除加插入处理 */
+        Object getKey(T item);
+
+        boolean areContentsTheSame(T oldItem, T newItem);
+    }
+
+    /** 依次为 type, position, count */
+    final List<int[]> ops = new ArrayList<>();
+
+    private ListDiff() {
+    }
+
+    /**
+     * 在后台线程调用，新旧列表在计算期间不能被修改
+     */
+    static <T> ListDiff compute(List<T> oldList, List<T> newList, Callback<T> callback) {
+        ListDiff diff = new ListDiff();
+        Map<Object, Integer> oldRemaining = countKeys(oldList, callback);
+        int i = 0, j = 0, position = 0;
+        int oldSize = oldList.size(), newSize = newList.size();
+
+        while (i < oldSize && j < newSize) {
+            T oldItem = oldList.get(i);
+            T newItem = newList.get(j);
+            Object oldKey = callback.getKey(oldItem);
+            Object newKey = callback.getKey(newItem);
+            if(oldKey != null && oldKey.equals(newKey)) {
+                if(!callback.areContentsTheSame(oldItem, newItem))
+                    diff.add(CHANGE, position, 1);
+                decrement(oldRemaining, oldKey);
+                i++;
+                j++;
+                position++;
+            } else if(!oldRemaining.containsKey(newKey)) {
+                diff.add(INSERT, position, 1);
+                j++;
+                position++;
+            } else {
+                //旧数据不在新列表中，或者位置变了
+                diff.add(REMOVE, position, 1);
+                decrement(oldRemaining, oldKey);
+                i++;
+            }
+        }
+        if(i < oldSize)
+            diff.add(REMOVE, position, oldSize - i);
+        if(j < newSize)
+            diff.add(INSERT, position, newSize - j);
+        return diff;
+    }
+
+    private static <T> Map<Object, Integer> countKeys(List<T> list, Callback<T> callback) {
+        Map<Object, Integer> counts = new HashMap<>(list.size() * 2);
+        for (T item : list) {
+            Object key = callback.getKey(item);
+            if(key == null)
+                continue;
+            Integer count = counts.get(key);
+            counts.put(key, count == null ? 1 : count + 1);
+        }
+        return counts;
+    }
+
+    private static void decrement(Map<Object, Integer> counts, Object key) {
+        Integer count = counts.get(key);
+        if(count == null)
+            return;
+        if(count <= 1) {
+            counts.remove(key);
+        } else {
+            counts.put(key, count - 1);
+        }
+    }
+
+    /**
+     * 与上一个操作连续时合并为一个范围
+     */
+    private void add(int type, int position, int count) {
+        if(!ops.isEmpty()) {
+            int[] last = ops.get(ops.size() - 1);
+            if(last[0] == type) {
+                if((type == INSERT || type == CHANGE) && last[1] + last[2] == position) {
+                    last[2] += count;
+                    return;
+                }
+                if(type == REMOVE && last[1] == position) {
+                    last[2] += count;
+                    return;
+                }
+            }
+        }
+        ops.add(new int[]{type, position, count});
+    }
+
+    boolean isEmpty() {
+        return ops.isEmpty();
+    }
+
+    /**
+     * 在主线程调用，此时Adapter的数据需要已经换成新列表
+     */
+    void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int[] op : ops) {
+            switch (op[0]) {
+                case INSERT:
+                    adapter.notifyItemRangeInserted(op[1], op[2]);
+                    break;
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(op[1], op[2]);
+                    break;
+                case CHANGE:
+                    adapter.notifyItemRangeChanged(op[1], op[2]);
+                    break;
+            }
+        }
+    }
+}
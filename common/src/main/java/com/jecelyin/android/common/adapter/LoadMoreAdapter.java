@@ -1,5 +1,7 @@
 package com.jecelyin.android.common.adapter;
 
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -10,6 +12,7 @@ import android.widget.TextView;
 import com.jecelyin.android.common.R;
 import com.jecelyin.android.common.widget.OnTryLoadListener;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -20,6 +23,8 @@ public abstract class LoadMoreAdapter<T> extends RecyclerView.Adapter {
     final public static int TYPE_ITEM = 0;
     final public static int TYPE_FOOTER = Integer.MAX_VALUE - 1;
     final public static int TYPE_LOADER = Integer.MAX_VALUE;
+    /** 开启stable ids时加载更多视图的id */
+    final private static long LOADER_ID = Long.MIN_VALUE;
 
     private OnTryLoadListener onTryLoadListener;
     private boolean loading = false;
@@ -92,6 +97,66 @@ public abstract class LoadMoreAdapter<T> extends RecyclerView.Adapter {
         onBindViewHolder2(holder, position);
     }
 
+    /**
+     * 加载更多的视图使用固定的id，其他位置交给 {@link #getItemId2(int)}。
+     * 一般重写getItemId2即可，重写这个方法时加载更多的视图需要返回super.getItemId(position)
+     */
+    @Override
+    public long getItemId(int position) {
+        if(getItemViewType(position) == TYPE_LOADER)
+            return LOADER_ID;
+        return getItemId2(position);
+    }
+
+    /**
+     * 开启 {@link #setHasStableIds(boolean)} 后返回列表数据的唯一id，
+     * position只在 {@link #getCount()} 范围内，不包括加载更多的视图。
+     * 不能返回Long.MIN_VALUE（加载更多的视图使用），默认返回 {@link RecyclerView#NO_ID}
+     */
+    public long getItemId2(int position) {
+        return RecyclerView.NO_ID;
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        recyclerView.getRecycledViewPool().setMaxRecycledViews(TYPE_LOADER, 1);
+        preInflate(recyclerView, TYPE_LOADER, 1);
+    }
+
+    /**
+     * 在主线程空闲时预先创建视图放入RecyclerView的回收池，需要显示时不用再inflate，
+     * 如 {@link #TYPE_FOOTER} 或第一屏之后才出现的类型
+     */
+    public void preInflate(final RecyclerView recyclerView, final int viewType, final int count) {
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            private int created;
+
+            @Override
+            public boolean queueIdle() {
+                if(recyclerView.getAdapter() != LoadMoreAdapter.this)
+                    return false;
+                RecyclerView.RecycledViewPool pool = recyclerView.getRecycledViewPool();
+                //共用的回收池中可能已经有其它列表回收的视图，取出来数一下再放回去
+                List<RecyclerView.ViewHolder> pooled = new ArrayList<>();
+                RecyclerView.ViewHolder holder;
+                while ((holder = pool.getRecycledView(viewType)) != null) {
+                    pooled.add(holder);
+                }
+                for (RecyclerView.ViewHolder h : pooled) {
+                    pool.putRecycledView(h);
+                }
+                //回收池上限小于count时放不进去，created保证最多创建count个
+                if(pooled.size() >= count || created >= count)
+                    return false;
+                //每次空闲只创建一个，避免占用太长时间
+                pool.putRecycledView(createViewHolder(recyclerView, viewType));
+                created++;
+                return pooled.size() + 1 < count && created < count;
+            }
+        });
+    }
+
     @Override
     public void onViewRecycled(RecyclerView.ViewHolder holder) {
         super.onViewRecycled(holder);
@@ -129,4 +194,20 @@ public abstract class LoadMoreAdapter<T> extends RecyclerView.Adapter {
     abstract public void setData(List<T> data);
 
     abstract public void addData(List<T> data);
+
+    /**
+     * 替换数据并通知刷新，子类可以只刷新有变化的行，见 {@link SwipeRefreshAdapter#submitData(List)}
+     */
+    public void submitData(List<T> data) {
+        setData(data);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * 追加数据并通知刷新
+     */
+    public void appendData(List<T> data) {
+        addData(data);
+        notifyDataSetChanged();
+    }
 }
@@ -0,0 +1,184 @@
+package com.jecelyin.android.common.adapter;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 按页保存数据的列表，只保留最近访问位置前后若干页的数据，更远的页释放为占位（{@link #get(int)} 返回null），
+ * 再次访问时通过 {@link PageLoader} 重新加载。释放不会改变位置，重新加载的条数与原来不同时调整这一页的大小
+ * 和后面各页的位置，无限滚动的列表占用的内存不会随着页数增长。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public class PagedList<T> extends AbstractList<T> {
+    public interface PageLoader {
+        /**
+         * 重新加载被释放的页，完成后调用 {@link SwipeRefreshAdapter#onPageReloaded(int, List)}
+         * @param page 从1开始的页序号
+         */
+        void loadPage(int page);
+    }
+
+    private static class Page<T> {
+        int size;
+        List<T> items;
+        boolean loading;
+
+        Page(List<T> items) {
+            this.size = items.size();
+            this.items = items;
+        }
+    }
+
+    private final int windowPages;
+    private final PageLoader loader;
+    private final List<Page<T>> pages = new ArrayList<>();
+    /** 每页第一条数据的位置 */
+    private int[] offsets = new int[8];
+    private int size;
+    /** 上次 {@link #loadAround(int)} 时所在的页 */
+    private int aroundPage = -1;
+
+    /**
+     * @param windowPages 访问位置前后各保留的页数
+     */
+    public PagedList(int windowPages, PageLoader loader) {
+        if(windowPages < 1) throw new IllegalArgumentException("windowPages < 1: " + windowPages);
+        this.windowPages = windowPages;
+        this.loader = loader;
+    }
+
+    /**
+     * @return 返回null表示是已释放的占位
+     */
+    @Override
+    public T get(int location) {
+        if(location < 0 || location >= size)
+            throw new IndexOutOfBoundsException("Invalid index " + location + ", size is " + size);
+        int page = pageIndexOf(location);
+        List<T> items = pages.get(page).items;
+        return items == null ? null : items.get(location - offsets[page]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 在末尾添加一页
+     */
+    public void addPage(List<T> items) {
+        if(pages.size() == offsets.length)
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        offsets[pages.size()] = size;
+        pages.add(new Page<>(new ArrayList<>(items)));
+        size += items.size();
+    }
+
+    /**
+     * 与 {@link #addPage(List)} 相同，{@link SwipeRefreshAdapter#addData(List)} 通过它追加一页
+     */
+    @Override
+    public boolean addAll(Collection<? extends T> collection) {
+        addPage(new ArrayList<>(collection));
+        return !collection.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        pages.clear();
+        size = 0;
+        aroundPage = -1;
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * @param page 从1开始的页序号
+     */
+    public int getPageOffset(int page) {
+        return offsets[page - 1];
+    }
+
+    /**
+     * @param page 从1开始的页序号
+     */
+    public int getPageSize(int page) {
+        return pages.get(page - 1).size;
+    }
+
+    public boolean isPageLoaded(int page) {
+        return pages.get(page - 1).items != null;
+    }
+
+    /**
+     * 放回重新加载的数据。条数与原来不同（期间服务器的数据有增删）时按新的条数调整，
+     * 后面各页的位置随之移动，调用者需要根据 {@link #getPageSize(int)} 的变化通知插入或删除
+     * @param page 从1开始的页序号
+     * @return false表示这一页不需要这些数据
+     */
+    public boolean setPage(int page, List<T> items) {
+        if(page < 1 || page > pages.size())
+            return false;
+        Page<T> p = pages.get(page - 1);
+        p.loading = false;
+        if(p.items != null)
+            return false;
+        p.items = items == null ? new ArrayList<T>() : new ArrayList<>(items);
+        int delta = p.items.size() - p.size;
+        if(delta != 0) {
+            p.size = p.items.size();
+            for (int i = page; i < pages.size(); i++) {
+                offsets[i] += delta;
+            }
+            size += delta;
+        }
+        return true;
+    }
+
+    /**
+     * 重新加载失败时调用，下次访问时再加载
+     */
+    public void onPageLoadFailed(int page) {
+        if(page >= 1 && page <= pages.size())
+            pages.get(page - 1).loading = false;
+        aroundPage = -1;
+    }
+
+    /**
+     * 访问位置变化时调用：释放窗口外的页，加载窗口附近被释放的页
+     */
+    public void loadAround(int location) {
+        if(location < 0 || location >= size)
+            return;
+        int current = pageIndexOf(location);
+        if(current == aroundPage)
+            return;
+        aroundPage = current;
+        for (int i = 0; i < pages.size(); i++) {
+            Page<T> p = pages.get(i);
+            if(Math.abs(i - current) > windowPages) {
+                p.items = null;
+            } else if(Math.abs(i - current) <= 1 && p.items == null && !p.loading && loader != null) {
+                p.loading = true;
+                loader.loadPage(i + 1);
+            }
+        }
+    }
+
+    private int pageIndexOf(int location) {
+        int index = Arrays.binarySearch(offsets, 0, pages.size(), location);
+        if(index < 0)
+            return -index - 2;
+        //跳过空页
+        while (index + 1 < pages.size() && offsets[index + 1] == location)
+            index++;
+        return index;
+    }
+}
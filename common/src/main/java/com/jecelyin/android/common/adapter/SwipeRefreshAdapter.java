@@ -1,15 +1,56 @@
 package com.jecelyin.android.common.adapter;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Jecelyin <jecelyin@gmail.com>
  */
-public abstract class SwipeRefreshAdapter<T> extends LoadMoreAdapter<T> {
+public abstract class SwipeRefreshAdapter<T> extends LoadMoreAdapter<T> implements ListDiff.Callback<T> {
+    /** 超过这个数量时在后台线程比较 */
+    private static final int ASYNC_DIFF_THRESHOLD = 100;
+    /**
+     * 后台比较用的单线程，不占用 {@link com.jecelyin.android.common.http.DecodeScheduler} 的解析线程，
+     * 空闲时线程退出
+     */
+    private static final ThreadPoolExecutor DIFF_EXECUTOR;
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    static {
+        DIFF_EXECUTOR = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_LESS_FAVORABLE);
+                        r.run();
+                    }
+                }, "ListDiff");
+            }
+        });
+        DIFF_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
     protected List<T> data;
     protected final Context context;
+    /** 每次submitData加1，后台比较完成时用于判断结果是否已过期 */
+    private int generation;
+    /** 后台比较期间追加的数据 */
+    private List<T> pendingAppends;
+    private int windowPages;
+    private PagedList.PageLoader pageLoader;
 
     public SwipeRefreshAdapter(Context context) {
         this.context = context;
@@ -20,9 +61,71 @@ public abstract class SwipeRefreshAdapter<T> extends LoadMoreAdapter<T> {
             data.clear();
     }
 
+    /**
+     * 复制一份数据，避免addData修改到共享的Bean（如 {@link com.jecelyin.android.common.http.BeanCache} 中的结果）
+     */
     @Override
     public void setData(List<T> data) {
-        this.data = data;
+        generation++;
+        pendingAppends = null;
+        if(windowPages > 0 && data != null) {
+            PagedList<T> list = new PagedList<>(windowPages, pageLoader);
+            list.addPage(data);
+            this.data = list;
+            return;
+        }
+        this.data = data == null ? null : new ArrayList<>(data);
+    }
+
+    /**
+     * 只在内存中保留当前位置前后 windowPages 页数据，更远的页释放，滑回来时通过loader重新加载，
+     * 见 {@link PagedList}。开启后 {@link #getItem(int)} 对未加载的位置返回null，需要绑定为占位视图。
+     * 已释放的页没有数据可以比较，开启后 {@link #submitData(List)} 总是刷新整个列表
+     * @param windowPages 0表示关闭
+     */
+    public void setWindow(int windowPages, PagedList.PageLoader loader) {
+        this.windowPages = windowPages;
+        this.pageLoader = loader;
+    }
+
+    /**
+     * 被释放的页重新加载完成
+     * @param page 从1开始的页序号
+     */
+    public void onPageReloaded(int page, List<T> items) {
+        if(!(data instanceof PagedList))
+            return;
+        PagedList<T> list = (PagedList<T>) data;
+        if(page < 1 || page > list.getPageCount())
+            return;
+        int oldSize = list.getPageSize(page);
+        if(!list.setPage(page, items))
+            return;
+        int start = list.getPageOffset(page);
+        int newSize = list.getPageSize(page);
+        notifyItemRangeChanged(start, Math.min(oldSize, newSize));
+        if(newSize < oldSize)
+            notifyItemRangeRemoved(start + newSize, oldSize - newSize);
+        else if(newSize > oldSize)
+            notifyItemRangeInserted(start + oldSize, newSize - oldSize);
+    }
+
+    /**
+     * 结果由 {@link com.jecelyin.android.common.helper.SwipeRefreshController#onSuccessResponse} 自己处理时，
+     * 用空页补齐到pageCount页，保持 {@link PagedList} 的页序号与请求的页码一致
+     */
+    public void ensurePageCount(int pageCount) {
+        if(!(data instanceof PagedList))
+            return;
+        PagedList<T> list = (PagedList<T>) data;
+        while (list.getPageCount() < pageCount) {
+            list.addPage(Collections.<T>emptyList());
+        }
+    }
+
+    public void onPageReloadFailed(int page) {
+        if(data instanceof PagedList)
+            ((PagedList<T>) data).onPageLoadFailed(page);
     }
 
     @Override
@@ -32,6 +135,147 @@ public abstract class SwipeRefreshAdapter<T> extends LoadMoreAdapter<T> {
         }
     }
 
+    /**
+     * 返回数据的唯一键，用于 {@link #submitData(List)} 比较新旧数据。
+     * 默认返回null表示不支持比较，有数据的键为null时submitData刷新整个列表
+     */
+    @Override
+    public Object getKey(T item) {
+        return null;
+    }
+
+    /**
+     * 使用 {@link #getKey(Object)} 作为stable id，RecyclerView可以按id复用视图和做动画，
+     * 需要在设置给RecyclerView之前调用
+     */
+    public void enableStableIds() {
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId2(int position) {
+        //不通过getItem，避免移动分页窗口
+        T item = position < getCount() ? data.get(position) : null;
+        Object key = item == null ? null : getKey(item);
+        if(key == null) {
+            //未加载的占位，按位置生成不会与数据重复的id
+            return Long.MIN_VALUE / 2 + position;
+        }
+        if(key instanceof Number)
+            return ((Number) key).longValue();
+        return hash64(key.toString());
+    }
+
+    /**
+     * FNV-1a
+     */
+    private static long hash64(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, length = s.length(); i < length; i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * 键相同的数据内容是否相同，不同时刷新这一行。
+     * 解析出来的Bean每次都是新对象，equals无法判断内容，所以默认键相同即认为没有变化；
+     * 同一个键的内容会变（如点赞数、状态）时需要重写，比较会影响显示的字段
+     */
+    @Override
+    public boolean areContentsTheSame(T oldItem, T newItem) {
+        return true;
+    }
+
+    private boolean hasKeys(List<T> list) {
+        for (T item : list) {
+            if(item == null || getKey(item) == null)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 替换数据并只刷新有变化的行，如刷新后的第一页。
+     * 数据较多时在后台线程比较，完成后再替换数据和通知刷新。
+     * 开启 {@link #setWindow} 时旧数据中被释放的页无法比较，按 {@link #setData(List)} 替换并刷新整个列表
+     */
+    public void submitData(List<T> newData) {
+        final List<T> newList = newData == null ? new ArrayList<T>() : new ArrayList<>(newData);
+        final List<T> oldList = data;
+        final int gen = ++generation;
+        pendingAppends = null;
+        if(windowPages > 0) {
+            setData(newList);
+            notifyDataSetChanged();
+            return;
+        }
+        if(oldList == null || oldList.isEmpty() || newList.isEmpty() || !hasKeys(oldList) || !hasKeys(newList)) {
+            data = newList;
+            notifyDataSetChanged();
+            return;
+        }
+        if(oldList.size() + newList.size() <= ASYNC_DIFF_THRESHOLD) {
+            applyDiff(newList, ListDiff.compute(oldList, newList, this));
+            return;
+        }
+        final List<T> oldSnapshot = new ArrayList<>(oldList);
+        pendingAppends = new ArrayList<>();
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ListDiff diff = ListDiff.compute(oldSnapshot, newList, SwipeRefreshAdapter.this);
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(gen != generation)
+                            return;
+                        List<T> appends = pendingAppends;
+                        pendingAppends = null;
+                        applyDiff(newList, diff);
+                        if(appends != null && !appends.isEmpty())
+                            appendData(appends);
+                    }
+                });
+            }
+        });
+    }
+
+    private void applyDiff(List<T> newList, ListDiff diff) {
+        data = newList;
+        diff.dispatchTo(this);
+    }
+
+    /**
+     * 在末尾追加数据（如下一页），只通知插入的范围
+     */
+    public void appendData(List<T> more) {
+        if(data instanceof PagedList) {
+            //空页也占一个页序号，与请求的页码对应
+            PagedList<T> list = (PagedList<T>) data;
+            int start = list.size();
+            list.addPage(more == null ? Collections.<T>emptyList() : more);
+            if(list.size() > start)
+                notifyItemRangeInserted(start, list.size() - start);
+            return;
+        }
+        if(more == null || more.isEmpty())
+            return;
+        if(pendingAppends != null) {
+            pendingAppends.addAll(more);
+            return;
+        }
+        if(data == null) {
+            data = new ArrayList<>(more);
+            notifyDataSetChanged();
+            return;
+        }
+        int start = data.size();
+        data.addAll(more);
+        notifyItemRangeInserted(start, more.size());
+    }
+
     @Override
     public int getCount() {
         if(data == null)
@@ -44,6 +288,8 @@ public abstract class SwipeRefreshAdapter<T> extends LoadMoreAdapter<T> {
     }
 
     public T getItem(int position) {
+        if(data instanceof PagedList)
+            ((PagedList<T>) data).loadAround(position);
         return data.get(position);
     }
 
@@ -2,16 +2,21 @@ package com.jecelyin.android.common.api;
 
 import android.content.Context;
 
-import java.lang.reflect.Field;
+import com.jecelyin.android.common.http.RequestPriority;
+import com.jecelyin.android.common.http.RetryPolicy;
+
+import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * @author Jecelyin <jecelyin@gmail.com>
  */
-public abstract class AbstractApi {
+public abstract class AbstractApi implements Cloneable {
     private int page;
     private int pageSize = 15;
+    private String cursorName;
+    private Object cursor;
     public static String API_URL = "";
 
     public static class Head {
@@ -47,34 +52,128 @@ public abstract class AbstractApi {
         this.page = page;
     }
 
+    public int getPage() {
+        return page;
+    }
+
     public void setPageSize(int pageSize) {
         this.pageSize = pageSize;
     }
 
+    /**
+     * 游标或键分页，见 {@link PagingStrategy}
+     * @param name 请求参数名
+     * @param cursor null表示第一页
+     */
+    public void setCursor(String name, Object cursor) {
+        this.cursorName = name;
+        this.cursor = cursor;
+    }
+
+    public String getCursorName() {
+        return cursorName;
+    }
+
+    public Object getCursor() {
+        return cursor;
+    }
+
     public Map<String, Object> getParams() {
         HashMap<String, Object> params = new HashMap<String, Object>();
-        Class clazz = getClass();
-        Field[] field = clazz.getDeclaredFields();
-        try {
-            for (Field f : field) {
-                f.setAccessible(true);
-                Object value = f.get(this);
-                if (value != null) {
-                    params.put(f.getName(), value);
-                }
-            }
-        } catch (IllegalArgumentException | IllegalAccessException e) {
-            e.printStackTrace();
-        }
+        FieldCache.putFields(this, params);
 
         if(page > 0) {
             params.put("currPage", page); //dev
             params.put("page", page); //tuike
             params.put("pageSize", pageSize);
+        } else if(cursorName != null) {
+            if(cursor != null)
+                params.put(cursorName, cursor);
+            params.put("pageSize", pageSize);
         }
 
         return params;
     }
 
     public void handleParams(Context context, Map<String, Object> params) {}
+
+    /**
+     * 浅拷贝，用于修改分页参数后另外发出请求而不影响原Api，如重新加载已释放的页
+     */
+    public AbstractApi copy() {
+        try {
+            return (AbstractApi) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * 自定义连接超时，单位毫秒，0表示使用 {@link com.jecelyin.android.common.http.HttpClientConfig} 的设置
+     */
+    public long getConnectTimeout() {
+        return 0;
+    }
+
+    /**
+     * 自定义读取超时，单位毫秒，0表示使用 {@link com.jecelyin.android.common.http.HttpClientConfig} 的设置
+     */
+    public long getReadTimeout() {
+        return 0;
+    }
+
+    /**
+     * 请求优先级，低优先级的请求在用户等待的请求完成后才发出
+     */
+    public RequestPriority getPriority() {
+        return RequestPriority.USER_VISIBLE;
+    }
+
+    /**
+     * 失败重试策略，默认不重试，可返回 {@link RetryPolicy#DEFAULT}
+     */
+    public RetryPolicy getRetryPolicy() {
+        return null;
+    }
+
+    /**
+     * POST请求在无网络或网络失败时是否放入离线队列，网络恢复后自动重发，
+     * 需要在Application中调用 {@link com.jecelyin.android.common.http.OfflineQueue#init}。
+     * 重发时通过无参构造函数重新创建Api并调用 {@link #handleParams}，Api类需要有无参构造函数
+     */
+    public boolean isOfflineQueueable() {
+        return false;
+    }
+
+    /**
+     * 离线队列去重和服务器端去重使用的key，默认由URL和参数生成
+     */
+    public String getIdempotencyKey() {
+        return null;
+    }
+
+    /**
+     * 请求者的身份，如登录用户，作为 {@link com.jecelyin.android.common.http.BeanCache} 键的一部分，
+     * 避免切换用户后取到上一个用户的数据。与用户无关的接口返回null
+     */
+    public String getCacheIdentity(Context context) {
+        return null;
+    }
+
+    /**
+     * 响应的Bean类型，需要与 {@link com.jecelyin.android.common.http.BeanResponse} 的类型相同或是它的子类，
+     * 不兼容时请求抛出IllegalArgumentException。监听者的类型不会被覆盖，只有它的泛型参数是类型变量时
+     * （如在泛型类中创建的监听者）才使用这个类型。
+     * 声明后在网络线程直接解析，不再经过 {@link com.jecelyin.android.common.http.DecodeScheduler}，适合响应较小、调用频繁的接口
+     */
+    public Type getBeanType() {
+        return null;
+    }
+
+    /**
+     * 是否允许与进行中的相同请求合并为一次网络调用，默认只合并GET请求
+     */
+    public boolean isCoalescable() {
+        return requestMethod() == Method.GET;
+    }
 }
@@ -9,7 +9,6 @@ import com.jecelyin.android.common.utils.CyptoUtils;
 import com.jecelyin.android.common.utils.DeviceId;
 
 import java.io.File;
-import java.lang.reflect.Field;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
@@ -21,6 +20,7 @@ import java.util.Map;
  * @author Jecelyin <jecelyin@gmail.com>
  */
 public abstract class ApiV2 extends AbstractApi {
+    private static final byte[] SIGN_KEY = {'f', 'a', 'n', 'g', 'd', 'r'};
 
     @Override
     public void handleParams(Context context, Map<String, Object> params) {
@@ -35,18 +35,7 @@ public abstract class ApiV2 extends AbstractApi {
 
         head.time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date());
         JSONObject jsonObject = new JSONObject();
-        Class clazz = head.getClass();
-        Field[] field = clazz.getDeclaredFields();
-        try {
-            for (Field f : field) {
-                f.setAccessible(true);
-                if (f.get(head) != null) {
-                    jsonObject.put(f.getName(), f.get(head));
-                }
-            }
-        } catch (IllegalArgumentException | IllegalAccessException e) {
-            e.printStackTrace();
-        }
+        FieldCache.putFields(head, jsonObject);
 
         //move file field
         HashMap<String, Object> fileMap = new HashMap<>();
@@ -68,15 +57,24 @@ public abstract class ApiV2 extends AbstractApi {
         //end
 
         params.put("head", jsonObject);
-        String paramJson = JSON.toJSONString(params);
-        final String key = "fangdr";
-        String sign = CyptoUtils.md5(paramJson + key);
+        //只序列化一次，签名和提交都使用同一份UTF-8数据
+        byte[] paramJson = JSON.toJSONBytes(params);
+        String sign = CyptoUtils.md5(paramJson, SIGN_KEY);
         params.clear();
         params.put("params", paramJson);
         params.put("sign", sign);
         params.putAll(fileMap);
     }
 
+    /**
+     * 请求头中的用户和token，token只参与摘要，不直接放入缓存键
+     */
+    @Override
+    public String getCacheIdentity(Context context) {
+        String token = getToken(context);
+        return getUserId(context) + "/" + (token == null ? null : CyptoUtils.md5(token));
+    }
+
     protected abstract String getUserId(Context context);
 
     protected abstract String getToken(Context context);
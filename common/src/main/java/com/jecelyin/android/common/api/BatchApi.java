@@ -0,0 +1,123 @@
+package com.jecelyin.android.common.api;
+
+import android.content.Context;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.jecelyin.android.common.http.RequestPriority;
+import com.jecelyin.android.common.http.RetryPolicy;
+
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量请求的信封，把多个Api合并为一个签名后的ApiV2请求。
+ * 请求参数 requests 为数组，每项包含 path、method 和经过各自 {@link #handleParams} 处理的 params；
+ * 服务器按相同顺序在响应的 data 数组中返回每个请求的完整结果，如：
+ * <pre>{"status":"0","data":[{"status":"0",...},{"status":"1","errorMsg":"..."}]}</pre>
+ *
+ * 批量请求使用各Api中最高的优先级、最短的超时，以及最少重试次数的重试策略（有Api不重试时整批不重试）。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public abstract class BatchApi extends ApiV2 {
+    private JSONArray requests;
+    private RequestPriority priority;
+    private RetryPolicy retryPolicy;
+    private long connectTimeout;
+    private long readTimeout;
+
+    public void setRequests(Context context, List<AbstractApi> apis) {
+        requests = new JSONArray(apis.size());
+        priority = null;
+        retryPolicy = null;
+        connectTimeout = 0;
+        readTimeout = 0;
+        boolean retry = true;
+        for (AbstractApi api : apis) {
+            Map<String, Object> params = api.getParams();
+            api.handleParams(context, params);
+            JSONObject item = new JSONObject();
+            item.put("path", api.getPath());
+            item.put("method", api.requestMethod().name());
+            item.put("params", toJsonParams(params));
+            requests.add(item);
+
+            if(priority == null || api.getPriority().compareTo(priority) < 0)
+                priority = api.getPriority();
+            connectTimeout = minTimeout(connectTimeout, api.getConnectTimeout());
+            readTimeout = minTimeout(readTimeout, api.getReadTimeout());
+            RetryPolicy policy = api.getRetryPolicy();
+            if(policy == null) {
+                retry = false;
+            } else if(retryPolicy == null || policy.maxRetries() < retryPolicy.maxRetries()) {
+                retryPolicy = policy;
+            }
+        }
+        if(!retry)
+            retryPolicy = null;
+    }
+
+    /**
+     * @return 两个超时中较短的一个，0表示使用默认设置
+     */
+    private static long minTimeout(long a, long b) {
+        if(a <= 0)
+            return b;
+        if(b <= 0)
+            return a;
+        return Math.min(a, b);
+    }
+
+    /**
+     * byte[]参数（如ApiV2签名后的params）是UTF-8文本，按文本放入信封，与单独提交时的内容一致
+     */
+    private static JSONObject toJsonParams(Map<String, Object> params) {
+        JSONObject result = new JSONObject(params.size());
+        for (Map.Entry<String, Object> e : params.entrySet()) {
+            Object value = e.getValue();
+            if(value instanceof byte[]) {
+                try {
+                    value = new String((byte[]) value, "UTF-8");
+                } catch (UnsupportedEncodingException ex) {
+                    throw new RuntimeException("Encoding not supported: UTF-8", ex);
+                }
+            }
+            result.put(e.getKey(), value);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Object> getParams() {
+        Map<String, Object> params = super.getParams();
+        params.put("requests", requests);
+        return params;
+    }
+
+    @Override
+    public Method requestMethod() {
+        return Method.POST;
+    }
+
+    @Override
+    public RequestPriority getPriority() {
+        return priority != null ? priority : super.getPriority();
+    }
+
+    @Override
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    @Override
+    public long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    @Override
+    public long getReadTimeout() {
+        return readTimeout;
+    }
+}
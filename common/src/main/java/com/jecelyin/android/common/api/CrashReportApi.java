@@ -1,5 +1,7 @@
 package com.jecelyin.android.common.api;
 
+import com.jecelyin.android.common.http.RequestPriority;
+
 /**
  * @author Jecelyin <jecelyin@gmail.com>
  * @since 2014.01.13
@@ -17,6 +19,16 @@ public class CrashReportApi extends AbstractApi
         return Method.POST;
     }
 
+    @Override
+    public RequestPriority getPriority() {
+        return RequestPriority.BACKGROUND;
+    }
+
+    @Override
+    public boolean isOfflineQueueable() {
+        return true;
+    }
+
     private String appVersion, phoneModel, androidVersion
             ,screen, freeMem, trace, email, comment;
 
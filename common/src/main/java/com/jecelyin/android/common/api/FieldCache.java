@@ -0,0 +1,46 @@
+package com.jecelyin.android.common.api;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓存每个类的已设置为可访问的字段，生成请求参数时只需遍历数组，不再每次反射查找字段
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+final class FieldCache {
+    private static final Map<Class<?>, Field[]> CACHE = new ConcurrentHashMap<>();
+
+    private FieldCache() {
+    }
+
+    static Field[] getFields(Class<?> clazz) {
+        Field[] fields = CACHE.get(clazz);
+        if(fields == null) {
+            fields = clazz.getDeclaredFields();
+            for (Field f : fields) {
+                f.setAccessible(true);
+            }
+            CACHE.put(clazz, fields);
+        }
+        return fields;
+    }
+
+    /**
+     * 把对象中不为null的字段值放入map
+     */
+    static void putFields(Object obj, Map<String, Object> map) {
+        Field[] fields = getFields(obj.getClass());
+        try {
+            for (Field f : fields) {
+                Object value = f.get(obj);
+                if (value != null) {
+                    map.put(f.getName(), value);
+                }
+            }
+        } catch (IllegalArgumentException | IllegalAccessException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.jecelyin.android.common.api;
+
+import android.text.TextUtils;
+
+import com.jecelyin.android.common.bean.ListBean;
+
+import java.util.List;
+
+/**
+ * 列表分页方式，由 {@link com.jecelyin.android.common.helper.SwipeRefreshController} 调用，
+ * 根据上一页的结果设置下一页的请求参数。
+ * <ul>
+ *     <li>{@link #PAGE_NUMBER} 页码分页，使用 {@link AbstractApi#setPage(int)}</li>
+ *     <li>{@link Cursor} 游标分页，服务器在 {@link ListBean#getNextCursor()} 返回下一页的游标</li>
+ *     <li>{@link Keyset} 按上一页最后一条数据的键（如id）分页</li>
+ * </ul>
+ * 后两种方式的查询不依赖偏移量，翻页较深时服务器开销更小，列表变化时也不会重复或漏掉数据。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public abstract class PagingStrategy {
+    public static final PagingStrategy PAGE_NUMBER = new PageNumber();
+
+    /**
+     * 设置第一页的请求参数
+     */
+    public abstract void setFirstPage(AbstractApi api);
+
+    /**
+     * 根据上一页的结果设置下一页的请求参数
+     * @param page 下一页的序号，从1开始
+     */
+    public abstract void setNextPage(AbstractApi api, ListBean<?> previous, int page);
+
+    /**
+     * @param page previous的序号
+     * @return previous之后是否还有数据
+     */
+    public abstract boolean hasMore(ListBean<?> previous, int page);
+
+    private static class PageNumber extends PagingStrategy {
+        @Override
+        public void setFirstPage(AbstractApi api) {
+            api.setPage(1);
+        }
+
+        @Override
+        public void setNextPage(AbstractApi api, ListBean<?> previous, int page) {
+            api.setPage(page);
+        }
+
+        @Override
+        public boolean hasMore(ListBean<?> previous, int page) {
+            return previous.getCurrPage() < previous.getTotalPage();
+        }
+    }
+
+    public static class Cursor extends PagingStrategy {
+        private final String paramName;
+
+        /**
+         * @param paramName 游标的请求参数名
+         */
+        public Cursor(String paramName) {
+            this.paramName = paramName;
+        }
+
+        @Override
+        public void setFirstPage(AbstractApi api) {
+            api.setPage(0);
+            api.setCursor(paramName, null);
+        }
+
+        @Override
+        public void setNextPage(AbstractApi api, ListBean<?> previous, int page) {
+            api.setPage(0);
+            api.setCursor(paramName, previous.getNextCursor());
+        }
+
+        @Override
+        public boolean hasMore(ListBean<?> previous, int page) {
+            if(previous.getHasMore() != null)
+                return previous.getHasMore();
+            return !TextUtils.isEmpty(previous.getNextCursor());
+        }
+    }
+
+    /**
+     * @param <T> 列表数据的类型
+     */
+    public static abstract class Keyset<T> extends PagingStrategy {
+        private final String paramName;
+
+        /**
+         * @param paramName 上一页最后一条数据的键的请求参数名，如 sinceId、maxId
+         */
+        public Keyset(String paramName) {
+            this.paramName = paramName;
+        }
+
+        /**
+         * 返回分页使用的键，列表需要按这个键排序
+         */
+        protected abstract Object getKey(T item);
+
+        @Override
+        public void setFirstPage(AbstractApi api) {
+            api.setPage(0);
+            api.setCursor(paramName, null);
+        }
+
+        /**
+         * previous 是使用这个分页方式的列表返回的结果，数据类型为T
+         */
+        @Override
+        public void setNextPage(AbstractApi api, ListBean<?> previous, int page) {
+            @SuppressWarnings("unchecked")
+            ListBean<T> bean = (ListBean<T>) previous;
+            List<T> list = bean.getDataList();
+            api.setPage(0);
+            api.setCursor(paramName, list == null || list.isEmpty() ? null : getKey(list.get(list.size() - 1)));
+        }
+
+        @Override
+        public boolean hasMore(ListBean<?> previous, int page) {
+            if(previous.getHasMore() != null)
+                return previous.getHasMore();
+            List<?> list = previous.getDataList();
+            return list != null && !list.isEmpty();
+        }
+    }
+}
@@ -27,11 +27,15 @@ import android.widget.Toast;
 
 import com.jecelyin.android.common.R;
 import com.jecelyin.android.common.api.CrashReportApi;
+import com.jecelyin.android.common.http.HttpClient;
+import com.jecelyin.android.common.http.HttpRequest;
+import com.jecelyin.android.common.http.HttpResponse;
+import com.jecelyin.android.common.http.OfflineQueue;
+import com.jecelyin.android.common.http.OnHttpResponseListener;
 import com.jecelyin.android.common.utils.SysUtils;
 
 import java.io.File;
 import java.io.FileWriter;
-import java.net.URLEncoder;
 
 public class CrashReportDialogActivity extends Activity implements DialogInterface.OnClickListener
 {
@@ -158,18 +162,44 @@ public class CrashReportDialogActivity extends Activity implements DialogInterfa
             return;
         }
 
-        String mail = URLEncoder.encode(mailEditText.getText().toString().trim());
-        String comment = URLEncoder.encode(mComment.getText().toString().trim());
-        //TODO: send to server
-        Toast.makeText(CrashReportDialogActivity.this, R.string.crash_report_success, Toast.LENGTH_SHORT).show();
-        mSuccessHandler.postDelayed(new Runnable()
+        CrashReportApi api = getApi();
+        api.setTrace(mMsg + "\n" + mTrace);
+        api.setEmail(mailEditText.getText().toString().trim());
+        api.setComment(mComment.getText().toString().trim());
+        final long start = System.currentTimeMillis();
+        //发送失败或离线时会写入离线队列，等写入磁盘后再结束进程
+        final OfflineQueue queue = OfflineQueue.init(getApplicationContext());
+        HttpClient.newInstance(this).request(api, new OnHttpResponseListener<Object>()
         {
             @Override
-            public void run()
+            public void onFailure(HttpClient httpClient, HttpRequest request, Exception e)
+            {
+                queue.afterPendingWrites(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        closeAfterToast(start);
+                    }
+                });
+            }
+
+            @Override
+            public void onResponse(HttpClient httpClient, HttpResponse response)
             {
-                mSuccessHandler.obtainMessage().sendToTarget();
+                closeAfterToast(start);
             }
-        }, 2000);
+        });
+        Toast.makeText(CrashReportDialogActivity.this, R.string.crash_report_success, Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * 提示至少显示2秒再退出
+     */
+    private void closeAfterToast(long start)
+    {
+        long delay = Math.max(0, 2000 - (System.currentTimeMillis() - start));
+        mSuccessHandler.sendEmptyMessageDelayed(0, delay);
     }
 
     private void close()
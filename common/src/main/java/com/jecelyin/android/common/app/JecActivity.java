@@ -8,6 +8,7 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.view.WindowManager;
 
+import com.jecelyin.android.common.http.HttpClient;
 import com.jecelyin.android.common.utils.SysUtils;
 
 import java.util.ArrayList;
@@ -32,6 +33,12 @@ public class JecActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        HttpClient.cancelAll(this);
+    }
+
     private void hideStatusBar() {
         if (Build.VERSION.SDK_INT < 16) {
             getWindow().setFlags(WindowManager.LayoutParams.FLAG_FULLSCREEN,
@@ -5,15 +5,23 @@ import android.app.Application;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.StrictMode;
 import android.util.Log;
 
 import com.bumptech.glide.request.target.ViewTarget;
 import com.jecelyin.android.common.R;
 import com.jecelyin.android.common.api.AbstractApi;
+import com.jecelyin.android.common.http.BeanCache;
+import com.jecelyin.android.common.http.BeanDeserializers;
+import com.jecelyin.android.common.http.ConnectionPrewarmer;
+import com.jecelyin.android.common.http.OfflineQueue;
 import com.jecelyin.android.common.utils.L;
 import com.jecelyin.android.common.utils.SysUtils;
 
+import java.lang.reflect.Type;
+
 public class JecApp extends Application implements Thread.UncaughtExceptionHandler
 {
     @Override
@@ -42,6 +50,8 @@ public class JecApp extends Application implements Thread.UncaughtExceptionHandl
         ViewTarget.setTagId(R.id.tag_first);
 
         AbstractApi.API_URL = (String)SysUtils.getBuildConfigValue(this, "API_URL");
+        // 后台预先生成Bean解析器，避免页面第一次加载时卡顿
+        BeanDeserializers.prepareAsync(getBeanTypes());
 
         ApplicationInfo appInfo = null;
         try {
@@ -63,6 +73,36 @@ public class JecApp extends Application implements Thread.UncaughtExceptionHandl
                 L.debug = true;
             }
         }
+        final boolean prewarm = appInfo != null && appInfo.metaData != null
+                && appInfo.metaData.getBoolean("http_prewarm", false);
+
+        // 会创建HttpClient，放到onCreate返回后执行，子类在super.onCreate()之后调用HttpClient.setConfig()也能生效
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                // 恢复并在网络恢复时发送离线请求
+                OfflineQueue.init(JecApp.this);
+                if(prewarm) {
+                    ConnectionPrewarmer.prewarm(JecApp.this, AbstractApi.API_URL);
+                }
+            }
+        });
+    }
+
+    /**
+     * 返回应用各页面使用的Bean类型，启动时预先生成它们的解析器，
+     * 泛型Bean可以使用 {@code new TypeReference<DataBean<User>>(){}.getType()}
+     */
+    protected Type[] getBeanTypes()
+    {
+        return new Type[0];
+    }
+
+    @Override
+    public void onTrimMemory(int level)
+    {
+        super.onTrimMemory(level);
+        BeanCache.getInstance().trimMemory(level);
     }
 
     @Override
@@ -3,11 +3,30 @@ package com.jecelyin.android.common.app;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentTransaction;
 
+import com.jecelyin.android.common.http.HttpClient;
+
 
 /**
  * @author Jecelyin <jecelyin@gmail.com>
  */
 public class JecFragment extends Fragment {
+    private HttpClient httpClient;
+
+    /**
+     * 属于当前Fragment的HttpClient，Fragment销毁时自动取消它发出的请求
+     */
+    protected HttpClient getHttpClient() {
+        if(httpClient == null)
+            httpClient = HttpClient.newInstance(getActivity(), this);
+        return httpClient;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        HttpClient.cancelAll(this);
+    }
+
     /**
      * 在当前Fragment开启另外一个Fragment
      * @param fragment
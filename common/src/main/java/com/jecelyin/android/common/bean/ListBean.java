@@ -8,6 +8,8 @@ import java.util.List;
 public class ListBean<T> extends BaseBean {
     private int totalPage;
     private int currPage;
+    private String nextCursor;
+    private Boolean hasMore;
 
     public int getTotalPage() {
         return totalPage;
@@ -25,6 +27,28 @@ public class ListBean<T> extends BaseBean {
         this.currPage = currPage;
     }
 
+    /**
+     * 游标分页时下一页的游标，见 {@link com.jecelyin.android.common.api.PagingStrategy.Cursor}
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * 游标或键分页时是否还有下一页，null表示服务器没有返回
+     */
+    public Boolean getHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(Boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
     public List<T> getDataList() {
         return null;
     }
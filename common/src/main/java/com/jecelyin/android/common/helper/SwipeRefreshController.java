@@ -1,23 +1,37 @@
 package com.jecelyin.android.common.helper;
 
 import android.content.Context;
+import android.os.SystemClock;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
 
 import com.jecelyin.android.common.adapter.LoadMoreAdapter;
+import com.jecelyin.android.common.adapter.PagedList;
+import com.jecelyin.android.common.adapter.SwipeRefreshAdapter;
 import com.jecelyin.android.common.api.AbstractApi;
+import com.jecelyin.android.common.api.PagingStrategy;
 import com.jecelyin.android.common.bean.ListBean;
 import com.jecelyin.android.common.http.BeanResponse;
+import com.jecelyin.android.common.http.CachePolicy;
+import com.jecelyin.android.common.http.DecodeScheduler;
 import com.jecelyin.android.common.http.HttpClient;
 import com.jecelyin.android.common.http.HttpRequest;
 import com.jecelyin.android.common.http.HttpResponse;
+import com.jecelyin.android.common.http.RequestPriority;
 import com.jecelyin.android.common.utils.L;
+import com.jecelyin.android.common.utils.ReflectUtils;
 import com.jecelyin.android.common.widget.OnLoadingListener;
 import com.jecelyin.android.common.widget.OnTryLoadListener;
 import com.jecelyin.android.common.widget.SmartSwipeRefreshLayout;
 
 import java.lang.ref.WeakReference;
-import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author Jecelyin <jecelyin@gmail.com>
@@ -27,11 +41,37 @@ public abstract class SwipeRefreshController<T2 extends ListBean> implements OnL
     private final LoadMoreAdapter adapter;
     private final AbstractApi api;
     private final HttpClient httpClient;
+    private final HttpClient prefetchClient;
+    /** 重新加载被释放的页，使用单独的缓存策略 */
+    private final HttpClient reloadClient;
     private int page;
     private int totalPage;
+    /** 最后显示的一页 */
+    private T2 lastPage;
+    private boolean hasMore;
+    private PagingStrategy pagingStrategy = PagingStrategy.PAGE_NUMBER;
+    /** 每页的请求参数，用于重新加载被 {@link PagedList} 释放的页 */
+    private final SparseArray<PageKey> pageKeys = new SparseArray<>();
+    private final Set<String> reloadTags = new HashSet<>();
     private String tag;
+    private String prefetchTag;
+    /** 正在正常加载的页码，0表示没有 */
+    private int loadingPage;
+    /** 正在预加载的页码，0表示没有 */
+    private int prefetchingPage;
+    /** 清空预加载时加1，忽略之前发出的预加载请求的回调 */
+    private int prefetchGeneration;
+    /** 用户已经滑到底部，在等待正在预加载的页面 */
+    private boolean waitingForPrefetch;
+    private final ArrayDeque<PrefetchedPage<T2>> prefetched = new ArrayDeque<>();
+    private long prefetchedBytes;
+    private int prefetchDepth;
+    private long prefetchMemoryBudget;
+    private long prefetchTimeBudget;
+    private final ScrollVelocityTracker velocityTracker = new ScrollVelocityTracker();
     private final Type type;
     private CacheEnum cache = CacheEnum.CACHE_FIRST_PAGE;
+    private CachePolicy cachePolicy = CachePolicy.REVALIDATE;
     private boolean mIsCacheResult = false;
     public static enum CacheEnum {
         CACHE_FIRST_PAGE,
@@ -39,6 +79,45 @@ public abstract class SwipeRefreshController<T2 extends ListBean> implements OnL
         NO_CACHE
     }
 
+    private static class PageKey {
+        final int page;
+        final String cursorName;
+        final Object cursor;
+
+        PageKey(AbstractApi api) {
+            this.page = api.getPage();
+            this.cursorName = api.getCursorName();
+            this.cursor = api.getCursor();
+        }
+
+        /**
+         * @return 设置了这一页参数的Api副本
+         */
+        AbstractApi newApi(AbstractApi api) {
+            AbstractApi copy = api.copy();
+            copy.setPage(page);
+            copy.setCursor(cursorName, cursor);
+            return copy;
+        }
+    }
+
+    /** 重新加载被释放的页时优先使用缓存 */
+    private static final CachePolicy RELOAD_CACHE_POLICY = new CachePolicy(Integer.MAX_VALUE, 0);
+
+    private static class PrefetchedPage<T2> {
+        final int page;
+        final HttpResponse response;
+        final T2 bean;
+        final long bytes;
+
+        PrefetchedPage(int page, HttpResponse response, T2 bean, long bytes) {
+            this.page = page;
+            this.response = response;
+            this.bean = bean;
+            this.bytes = bytes;
+        }
+    }
+
     public SwipeRefreshController(Context context, SmartSwipeRefreshLayout smartSwipeRefreshLayout, AbstractApi api, LoadMoreAdapter adapter) {
         if(smartSwipeRefreshLayout.getAdapter() == null) {
             L.e("Please set the " + adapter.getClass().getSimpleName() + " to SmartSwipeRefreshLayout.");
@@ -46,9 +125,13 @@ public abstract class SwipeRefreshController<T2 extends ListBean> implements OnL
         this.pullToRefresh = new WeakReference<>(smartSwipeRefreshLayout);
         this.adapter = adapter;
         this.api = api;
-        Type superClass = getClass().getGenericSuperclass();
-        type = ((ParameterizedType) superClass).getActualTypeArguments()[0];
+        type = ReflectUtils.getSuperclassTypeArgument(getClass());
         httpClient = HttpClient.newInstance(context);
+        prefetchClient = HttpClient.newInstance(context);
+        prefetchClient.setPriority(RequestPriority.PREFETCH);
+        reloadClient = HttpClient.newInstance(context);
+        reloadClient.setCachePolicy(RELOAD_CACHE_POLICY);
+        smartSwipeRefreshLayout.getRecyclerView().addOnScrollListener(velocityTracker);
         smartSwipeRefreshLayout.setOnLoadingListener(this);
         smartSwipeRefreshLayout.setOnTryLoadListener(this);
     }
@@ -74,80 +157,80 @@ public abstract class SwipeRefreshController<T2 extends ListBean> implements OnL
     }
 
     public void loadFirstPage() {
-        loadPage(1);
+        clearPrefetched();
+        cancelReloads();
+        pageKeys.clear();
+        loadPage(1, null);
     }
 
     public void loadNextPage() {
-        if(page >= totalPage) {
+        if(lastPage == null || !hasMore) {
             if(pullToRefresh.get() == null)
                 return;
             pullToRefresh.get().setLoadingMore(false);
             return;
         }
-        loadPage(page + 1);
+        PrefetchedPage<T2> next = pollPrefetched(page + 1);
+        if(next != null) {
+            //已预加载，直接显示
+            onPageLoaded(next.page, httpClient, next.response, next.bean);
+            return;
+        }
+        if(prefetchingPage == page + 1) {
+            waitingForPrefetch = true;
+            return;
+        }
+        loadPage(page + 1, lastPage);
     }
 
-    private void loadPage(int p) {
-        api.setPage(p);
+    /**
+     * @param previous 上一页的结果，第一页时为null
+     */
+    private void loadPage(final int p, T2 previous) {
+        if(p == 1) {
+            pagingStrategy.setFirstPage(api);
+        } else {
+            pagingStrategy.setNextPage(api, previous, p);
+        }
+        pageKeys.put(p, new PageKey(api));
+        boolean useCache;
         if(cache == CacheEnum.CACHE_FIRST_PAGE) {
-            if(p == 1) {
-                httpClient.setUseCache(true);
-            } else {
-                httpClient.setUseCache(false);
-            }
-        } else if(cache == CacheEnum.CACHE_ALL) {
-            httpClient.setUseCache(true);
+            useCache = p == 1;
         } else {
-            httpClient.setUseCache(false);
+            useCache = cache == CacheEnum.CACHE_ALL;
         }
+        httpClient.setCachePolicy(useCache ? cachePolicy : null);
 
         SmartSwipeRefreshLayout view = pullToRefresh.get();
         if(view == null)
             return;
         view.showLoading();
 
-        tag = httpClient.request(api, new BeanResponse<T2>() {
+        loadingPage = p;
+        //匿名类的泛型参数是T2，需要传入控制器子类声明的实际类型
+        tag = httpClient.request(api, new BeanResponse<T2>(type) {
             @Override
             public void onResponse(HttpClient httpClient, HttpResponse response, T2 bean) {
-                mIsCacheResult = response.isCacheResponse();
-                page = bean.getCurrPage();
-                totalPage = bean.getTotalPage();
+                //先返回的缓存结果还要等待网络验证
+                if(!response.isRevalidating())
+                    loadFinished(p);
+                onPageLoaded(p, httpClient, response, bean);
+            }
 
+            @Override
+            public void onNotModified(HttpClient httpClient, HttpRequest request) {
+                loadFinished(p);
+                //缓存结果已是最新
                 SmartSwipeRefreshLayout view = pullToRefresh.get();
-                if (view == null) //被回收或离开了当前页面
+                if(view == null)
                     return;
-                //是否自己处理结果
-                if (!onSuccessResponse(httpClient, response, bean)) {
-                    List data = bean.getDataList();
-                    if (data != null) {
-                        if (page > 1) {
-                            adapter.addData(data);
-                        } else {
-                            adapter.setData(data);
-                        }
-                    }
-                }
-                /**
-                 * {@link android.widget.ListView#layoutChildren}
-                 * 数据修改后，要马上通知Adapter数据已经改变，期间若做其它操作会导致异常
-                 */
-                adapter.notifyDataSetChanged();
-//                Log.d(SwipeRefreshController.class.getName(), "page="+page+" totalPage="+totalPage);
-                if (page >= totalPage) {
-                    view.setMode(SmartSwipeRefreshLayout.Mode.REFRESH);
-                } else {
-                    view.setMode(SmartSwipeRefreshLayout.Mode.BOTH);
-                }
-                if (!mIsCacheResult) {
-                    view.hideLoading();
-                } else {
-                    //数据变动后，可能就没有加载状态显示了，再显示一下
-                    view.showLoading();
-                }
+                view.hideLoading();
+                prefetch(prefetchDepth);
             }
 
             @Override
             public void onFailure(HttpClient httpClient, HttpRequest request, Exception e) {
+                loadFinished(p);
                 SmartSwipeRefreshLayout view = pullToRefresh.get();
                 if(view == null)
                     return;
@@ -159,12 +242,261 @@ public abstract class SwipeRefreshController<T2 extends ListBean> implements OnL
                 //注意setError需要正确地判断是否正在loading
                 view.hideLoading();
             }
-        });
+        }.setDecodePriority(DecodeScheduler.PRIORITY_FOREGROUND));
 
     }
 
+    private void loadFinished(int p) {
+        if(loadingPage == p)
+            loadingPage = 0;
+    }
+
+    private void onPageLoaded(int p, HttpClient httpClient, HttpResponse response, T2 bean) {
+        mIsCacheResult = response.isCacheResponse();
+        page = p;
+        totalPage = bean.getTotalPage();
+        lastPage = bean;
+        hasMore = pagingStrategy.hasMore(bean, p);
+
+        SmartSwipeRefreshLayout view = pullToRefresh.get();
+        if (view == null) //被回收或离开了当前页面
+            return;
+        //是否自己处理结果
+        boolean handled = onSuccessResponse(httpClient, response, bean);
+        List data = handled ? null : bean.getDataList();
+        if (data == null && !handled && page > 1) {
+            //空页也要追加，分页窗口的页序号与页码保持一致
+            data = Collections.emptyList();
+        }
+        /**
+         * {@link android.widget.ListView#layoutChildren}
+         * 数据修改后，要马上通知Adapter数据已经改变，期间若做其它操作会导致异常
+         */
+        if (data == null) {
+            if (adapter instanceof SwipeRefreshAdapter)
+                ((SwipeRefreshAdapter<?>) adapter).ensurePageCount(page);
+            adapter.notifyDataSetChanged();
+        } else if (page > 1) {
+            //只通知追加的范围，不重新绑定已显示的行
+            adapter.appendData(data);
+        } else {
+            adapter.submitData(data);
+        }
+//                Log.d(SwipeRefreshController.class.getName(), "page="+page+" totalPage="+totalPage);
+        if (!hasMore) {
+            view.setMode(SmartSwipeRefreshLayout.Mode.REFRESH);
+        } else {
+            view.setMode(SmartSwipeRefreshLayout.Mode.BOTH);
+        }
+        if (!response.isRevalidating()) {
+            view.hideLoading();
+            prefetch(prefetchDepth);
+        } else {
+            //数据变动后，可能就没有加载状态显示了，再显示一下
+            view.showLoading();
+        }
+    }
+
+    /**
+     * 在后台加载后面的页面，结果暂存在控制器中，滑到底部时直接显示。
+     * 正常加载进行中时不预加载，避免同一页请求两次
+     * @param depth 最多预加载的页数
+     */
+    private void prefetch(int depth) {
+        if(prefetchingPage > 0 || loadingPage > 0 || depth <= 0)
+            return;
+        dropStalePrefetched();
+        if(prefetched.size() >= depth || (prefetchMemoryBudget > 0 && prefetchedBytes >= prefetchMemoryBudget))
+            return;
+        PrefetchedPage<T2> last = prefetched.peekLast();
+        int previousPage = last == null ? page : last.page;
+        T2 previous = last == null ? lastPage : last.bean;
+        if(previous == null || !pagingStrategy.hasMore(previous, previousPage))
+            return;
+
+        final int next = previousPage + 1;
+        final int generation = prefetchGeneration;
+        prefetchingPage = next;
+        pagingStrategy.setNextPage(api, previous, next);
+        pageKeys.put(next, new PageKey(api));
+        prefetchClient.setCachePolicy(null);
+        prefetchTag = prefetchClient.request(api, new BeanResponse<T2>(type) {
+            @Override
+            public void onResponse(HttpClient httpClient, HttpResponse response, T2 bean) {
+                if(generation != prefetchGeneration || prefetchingPage != next) {
+                    //已被clearPrefetched取消
+                    response.body().close();
+                    return;
+                }
+                prefetchingPage = 0;
+                dropStalePrefetched();
+                if(next != page + prefetched.size() + 1) {
+                    //期间刷新了列表
+                    return;
+                }
+                if(waitingForPrefetch) {
+                    waitingForPrefetch = false;
+                    onPageLoaded(next, httpClient, response, bean);
+                    return;
+                }
+                long bytes = response.body().byteCount();
+                prefetched.addLast(new PrefetchedPage<>(next, response, bean, bytes));
+                prefetchedBytes += bytes;
+                prefetch(prefetchDepth);
+            }
+
+            @Override
+            public void onFailure(HttpClient httpClient, HttpRequest request, Exception e) {
+                if(generation != prefetchGeneration || prefetchingPage != next)
+                    return;
+                prefetchingPage = 0;
+                if(waitingForPrefetch) {
+                    //用户在等待时改为正常加载，由它显示错误
+                    waitingForPrefetch = false;
+                    loadPage(page + 1, lastPage);
+                }
+            }
+        }.setDecodePriority(DecodeScheduler.PRIORITY_BACKGROUND));
+    }
+
+    private PrefetchedPage<T2> pollPrefetched(int p) {
+        dropStalePrefetched();
+        PrefetchedPage<T2> first = prefetched.peekFirst();
+        if(first == null || first.page != p)
+            return null;
+        prefetched.pollFirst();
+        prefetchedBytes -= first.bytes;
+        return first;
+    }
+
+    /**
+     * 丢弃已经由正常加载显示过的页
+     */
+    private void dropStalePrefetched() {
+        PrefetchedPage<T2> first;
+        while ((first = prefetched.peekFirst()) != null && first.page <= page) {
+            prefetched.pollFirst();
+            prefetchedBytes -= first.bytes;
+        }
+    }
+
+    private void clearPrefetched() {
+        prefetchGeneration++;
+        prefetchClient.cancel(prefetchTag);
+        prefetchingPage = 0;
+        waitingForPrefetch = false;
+        prefetched.clear();
+        prefetchedBytes = 0;
+    }
+
+    /**
+     * 只在内存中保留当前位置前后若干页的数据，适合很长的列表，Adapter需要继承 {@link SwipeRefreshAdapter}，
+     * 并在 {@link SwipeRefreshAdapter#getItem(int)} 返回null时绑定占位视图
+     * @param windowPages 当前位置前后各保留的页数，0表示关闭
+     */
+    public void setWindow(int windowPages) {
+        if(!(adapter instanceof SwipeRefreshAdapter))
+            throw new IllegalStateException("setWindow() requires a SwipeRefreshAdapter");
+        ((SwipeRefreshAdapter) adapter).setWindow(windowPages, windowPages > 0 ? new PagedList.PageLoader() {
+            @Override
+            public void loadPage(int page) {
+                reloadPage(page);
+            }
+        } : null);
+    }
+
+    /**
+     * 重新加载被释放的页，优先从缓存读取
+     */
+    private void reloadPage(final int p) {
+        final SwipeRefreshAdapter swipeAdapter = (SwipeRefreshAdapter) adapter;
+        PageKey key = pageKeys.get(p);
+        if(key == null) {
+            swipeAdapter.onPageReloadFailed(p);
+            return;
+        }
+        final String[] reloadTag = new String[1];
+        reloadTag[0] = reloadClient.request(key.newApi(api), new BeanResponse<T2>(type) {
+            @Override
+            public void onResponse(HttpClient httpClient, HttpResponse response, T2 bean) {
+                reloadTags.remove(reloadTag[0]);
+                swipeAdapter.onPageReloaded(p, bean.getDataList());
+            }
+
+            @Override
+            public void onFailure(HttpClient httpClient, HttpRequest request, Exception e) {
+                reloadTags.remove(reloadTag[0]);
+                swipeAdapter.onPageReloadFailed(p);
+            }
+        }.setDecodePriority(DecodeScheduler.PRIORITY_FOREGROUND));
+        reloadTags.add(reloadTag[0]);
+    }
+
+    private void cancelReloads() {
+        for (String t : reloadTags) {
+            reloadClient.cancel(t);
+        }
+        reloadTags.clear();
+    }
+
+    /**
+     * 开启预加载：每页显示后在后台加载后面的页面，滑到底部时直接显示，不用等待网络
+     * @param depth 最多预加载的页数，0表示关闭
+     * @param memoryBudget 预加载结果占用的最大字节数（按响应大小估算），0表示不限制
+     */
+    public void setPrefetch(int depth, long memoryBudget) {
+        this.prefetchDepth = depth;
+        this.prefetchMemoryBudget = memoryBudget;
+    }
+
+    /**
+     * 根据滑动速度预测在指定时间内会滑到底部时预加载下一页，适合没有开启 {@link #setPrefetch} 时的快速滑动
+     * @param millis 0表示关闭
+     */
+    public void setPrefetchTimeBudget(long millis) {
+        this.prefetchTimeBudget = millis;
+    }
+
+    /**
+     * 按可见位置的变化估算滑动速度（条/毫秒）
+     */
+    private class ScrollVelocityTracker extends RecyclerView.OnScrollListener {
+        private int lastPosition = -1;
+        private long lastTime;
+        private float itemsPerMs;
+
+        @Override
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+            if(prefetchTimeBudget <= 0 || dy <= 0 || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager))
+                return;
+            int position = ((LinearLayoutManager) recyclerView.getLayoutManager()).findLastVisibleItemPosition();
+            long now = SystemClock.uptimeMillis();
+            if(lastPosition >= 0 && position > lastPosition && now > lastTime) {
+                float rate = (float) (position - lastPosition) / (now - lastTime);
+                itemsPerMs = itemsPerMs == 0 ? rate : itemsPerMs * 0.7f + rate * 0.3f;
+            }
+            if(position != lastPosition) {
+                lastPosition = position;
+                lastTime = now;
+            }
+            int remaining = adapter.getCount() - 1 - position;
+            if(itemsPerMs > 0 && remaining / itemsPerMs <= prefetchTimeBudget)
+                prefetch(Math.max(1, prefetchDepth));
+        }
+
+        @Override
+        public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+            if(newState == RecyclerView.SCROLL_STATE_IDLE) {
+                lastPosition = -1;
+                itemsPerMs = 0;
+            }
+        }
+    }
+
     public void close() {
         httpClient.cancel(tag);
+        clearPrefetched();
+        cancelReloads();
     }
 
     /**
@@ -176,10 +508,24 @@ public abstract class SwipeRefreshController<T2 extends ListBean> implements OnL
         return false;
     }
 
+    /**
+     * 设置分页方式，默认 {@link PagingStrategy#PAGE_NUMBER}
+     */
+    public void setPagingStrategy(PagingStrategy pagingStrategy) {
+        this.pagingStrategy = pagingStrategy;
+    }
+
     public void setCacheType(CacheEnum cache) {
         this.cache = cache;
     }
 
+    /**
+     * 设置 {@link CacheEnum} 选中的页面使用的缓存策略，默认 {@link CachePolicy#REVALIDATE}
+     */
+    public void setCachePolicy(CachePolicy cachePolicy) {
+        this.cachePolicy = cachePolicy;
+    }
+
     public boolean isCacheResult() {
         return mIsCacheResult;
     }
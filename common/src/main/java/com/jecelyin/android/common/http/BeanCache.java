@@ -0,0 +1,125 @@
+package com.jecelyin.android.common.http;
+
+import android.content.ComponentCallbacks2;
+import android.support.v4.util.LruCache;
+
+import com.jecelyin.android.common.bean.BaseBean;
+
+/**
+ * 已解析Bean的内存缓存，位于okhttp磁盘缓存之前。返回列表页时可以直接使用内存中的结果，
+ * 不需要读磁盘和重新解析。按响应字节数估算占用大小。
+ * 只缓存GET请求，键由请求指纹、{@link com.jecelyin.android.common.api.AbstractApi#getCacheIdentity}
+ * 和Bean类型组成。
+ * 缓存中的Bean会被多个页面共享，使用者不能修改其中的数据。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public class BeanCache {
+    private static final int MIN_ENTRY_WEIGHT = 1024;
+
+    private static BeanCache instance;
+
+    private final LruCache<String, Entry> cache;
+
+    public static final class Entry {
+        final BaseBean bean;
+        /** 数据从网络接收时间 */
+        final long receivedMillis;
+        final int weight;
+
+        Entry(BaseBean bean, long receivedMillis, int weight) {
+            this.bean = bean;
+            this.receivedMillis = receivedMillis;
+            this.weight = Math.max(weight, MIN_ENTRY_WEIGHT);
+        }
+
+        long age() {
+            return Math.max(0, System.currentTimeMillis() - receivedMillis);
+        }
+    }
+
+    public BeanCache(int maxBytes) {
+        cache = new LruCache<String, Entry>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Entry value) {
+                return value.weight;
+            }
+        };
+    }
+
+    public synchronized static BeanCache getInstance() {
+        if(instance == null) {
+            instance = new BeanCache((int) Math.min(Runtime.getRuntime().maxMemory() / 16, Integer.MAX_VALUE));
+        }
+        return instance;
+    }
+
+    public synchronized static void setInstance(BeanCache beanCache) {
+        instance = beanCache;
+    }
+
+    Entry get(String key) {
+        return cache.get(key);
+    }
+
+    void put(String key, Entry entry) {
+        cache.put(key, entry);
+    }
+
+    /**
+     * 服务器返回304时更新接收时间，之后在 {@link CachePolicy} 的maxAge内直接使用
+     */
+    void refresh(String key, long receivedMillis) {
+        synchronized (cache) {
+            Entry entry = cache.get(key);
+            if(entry != null)
+                cache.put(key, new Entry(entry.bean, receivedMillis, entry.weight));
+        }
+    }
+
+    public void remove(String key) {
+        cache.remove(key);
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+
+    /**
+     * 在 {@link android.app.Application#onTrimMemory(int)} 中调用
+     */
+    public void trimMemory(int level) {
+        if(level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            cache.evictAll();
+        } else if(level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.trimToSize(cache.maxSize() / 2);
+        }
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public int maxSize() {
+        return cache.maxSize();
+    }
+
+    public int hitCount() {
+        return cache.hitCount();
+    }
+
+    public int missCount() {
+        return cache.missCount();
+    }
+
+    public int evictionCount() {
+        return cache.evictionCount();
+    }
+
+    @Override
+    public String toString() {
+        return cache.toString();
+    }
+}
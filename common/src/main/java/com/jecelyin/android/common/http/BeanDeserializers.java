@@ -0,0 +1,125 @@
+package com.jecelyin.android.common.http;
+
+import android.os.SystemClock;
+
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.jecelyin.android.common.bean.BaseBean;
+import com.jecelyin.android.common.bean.DataBean;
+import com.jecelyin.android.common.bean.ListBean;
+import com.jecelyin.android.common.utils.L;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 预先生成fastjson的Bean解析器。fastjson第一次解析某个类时才反射生成解析器并缓存在 {@link ParserConfig} 中，
+ * 在启动时于后台线程提前调用 {@link ParserConfig#getDeserializer(Type)}，避免每个页面第一次加载时卡顿。
+ * 会递归处理Bean字段中引用到的其它Bean类型。
+ * 生成的仍是fastjson自己的解析器，字段名匹配和 @JSONField 等规则与正常解析完全一致。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public class BeanDeserializers {
+    private static final String TAG = "BeanDeserializers";
+    private static final String[] BUILTIN_PACKAGES = {"java.", "javax.", "android.", "com.alibaba.fastjson."};
+    private static final Set<Class<?>> prepared = new HashSet<>();
+
+    /**
+     * 在解析线程池中以后台优先级预生成，不影响用户正在等待的解析
+     */
+    public static void prepareAsync(final Type... types) {
+        DecodeScheduler.getInstance().execute(DecodeScheduler.PRIORITY_BACKGROUND, new DecodeScheduler.Task<Integer>() {
+            @Override
+            protected Integer doInBackground() {
+                return prepare(types);
+            }
+
+            @Override
+            protected void onPostExecute(Integer count) {
+                L.d(TAG, "prepared " + count + " deserializers in " + getDecodeMillis() + "ms");
+            }
+        });
+    }
+
+    /**
+     * @return 新生成的解析器数量
+     */
+    public static int prepare(Type... types) {
+        ParserConfig config = ParserConfig.getGlobalInstance();
+        int count = 0;
+        count += prepare(config, BaseBean.class);
+        count += prepare(config, DataBean.class);
+        count += prepare(config, ListBean.class);
+        for (Type type : types) {
+            try {
+                count += prepare(config, type);
+            } catch (Exception e) {
+                //不影响正常解析，第一次解析时会再生成
+                L.e(e);
+            }
+        }
+        return count;
+    }
+
+    private static int prepare(ParserConfig config, Type type) {
+        if(type instanceof ParameterizedType) {
+            ParameterizedType pt = (ParameterizedType) type;
+            int count = prepare(config, pt.getRawType());
+            for (Type arg : pt.getActualTypeArguments()) {
+                count += prepare(config, arg);
+            }
+            return count;
+        }
+        if(type instanceof GenericArrayType)
+            return prepare(config, ((GenericArrayType) type).getGenericComponentType());
+        if(type instanceof WildcardType)
+            return prepare(config, ((WildcardType) type).getUpperBounds()[0]);
+        if(!(type instanceof Class))
+            return 0;
+
+        Class<?> clazz = (Class<?>) type;
+        if(clazz.isArray())
+            return prepare(config, clazz.getComponentType());
+        if(!isBeanClass(clazz))
+            return 0;
+        synchronized (prepared) {
+            if(!prepared.add(clazz))
+                return 0;
+        }
+
+        long start = L.debug ? SystemClock.uptimeMillis() : 0;
+        config.getDeserializer(clazz);
+        if(L.debug)
+            L.d(TAG, clazz.getName() + " " + (SystemClock.uptimeMillis() - start) + "ms");
+
+        int count = 1;
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if(Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers()))
+                    continue;
+                count += prepare(config, field.getGenericType());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 基本类型、String、集合等fastjson已内置解析器的类型不需要处理
+     */
+    private static boolean isBeanClass(Class<?> clazz) {
+        if(clazz.isPrimitive() || clazz.isEnum() || clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers()))
+            return false;
+        String name = clazz.getName();
+        for (String prefix : BUILTIN_PACKAGES) {
+            if(name.startsWith(prefix))
+                return false;
+        }
+        return true;
+    }
+}
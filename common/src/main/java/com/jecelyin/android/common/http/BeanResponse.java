@@ -3,34 +3,150 @@ package com.jecelyin.android.common.http;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
-import android.os.AsyncTask;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.widget.Toast;
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.TypeReference;
+import com.alibaba.fastjson.util.TypeUtils;
 import com.jecelyin.android.common.R;
 import com.jecelyin.android.common.bean.BaseBean;
 import com.jecelyin.android.common.utils.L;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
 
 /**
  * @author Jecelyin <jecelyin@gmail.com>
  */
 public abstract class BeanResponse<T extends BaseBean> extends OnHttpResponseListener<T> {
 
+    private int decodePriority = DecodeScheduler.PRIORITY_FOREGROUND;
+    private String cacheKey;
+    /** Api声明的类型，只在监听者自己的泛型参数是类型变量时使用 */
+    private Type beanType;
+    /** Api声明了类型，在网络线程直接解析 */
+    private boolean decodeInline;
+    private boolean keepBody;
+
+    public BeanResponse() {
+    }
+
+    /**
+     * @see OnHttpResponseListener#OnHttpResponseListener(Type)
+     */
+    public BeanResponse(Type type) {
+        super(type);
+    }
+
+    /**
+     * 使用预先创建的类型，如 {@code static final TypeReference<DataBean<User>> USER = new TypeReference<DataBean<User>>(){};}
+     */
+    public BeanResponse(TypeReference<T> typeReference) {
+        super(typeReference.getType());
+    }
+
+    /**
+     * 设置解析优先级，预加载等后台请求使用 {@link DecodeScheduler#PRIORITY_BACKGROUND}
+     */
+    public BeanResponse<T> setDecodePriority(int priority) {
+        this.decodePriority = priority;
+        return this;
+    }
+
+    public int getDecodePriority() {
+        return decodePriority;
+    }
+
+    /**
+     * 默认直接从响应流解析，解析后不能再调用 {@code response.body().string()/bytes()}。
+     * 回调中还需要读取原始响应内容时设置为true，响应会完整读入内存后再解析。
+     * 内存缓存（{@link BeanCache}）命中时没有响应内容，body为空
+     */
+    public BeanResponse<T> setKeepBody(boolean keepBody) {
+        this.keepBody = keepBody;
+        return this;
+    }
+
+    /**
+     * Api通过 {@link com.jecelyin.android.common.api.AbstractApi#getBeanType()} 声明了类型，在网络线程直接解析。
+     * 不覆盖监听者自己的类型（泛型参数或构造方法指定的Type），只在它是类型变量时使用Api的类型
+     * @throws IllegalArgumentException Api的类型与监听者的类型不兼容
+     */
+    void applyApiBeanType(Type apiType) {
+        Type own = getType();
+        if(own instanceof TypeVariable) {
+            beanType = apiType;
+        } else if(!isCompatible(own, apiType)) {
+            throw new IllegalArgumentException("Api bean type " + apiType + " is not compatible with " + getClass().getName() + "<" + own + ">");
+        }
+        decodeInline = true;
+    }
+
+    /**
+     * Api的类型与监听者的类型相同，或者是它的子类
+     */
+    private static boolean isCompatible(Type listenerType, Type apiType) {
+        if(listenerType.equals(apiType))
+            return true;
+        Class<?> listenerClass = TypeUtils.getClass(listenerType);
+        Class<?> apiClass = TypeUtils.getClass(apiType);
+        return listenerClass != null && apiClass != null && listenerClass.isAssignableFrom(apiClass);
+    }
+
+    @Override
+    protected Type getType() {
+        return beanType != null ? beanType : super.getType();
+    }
+
+    /**
+     * 设置后解析成功的结果会放入 {@link BeanCache}
+     */
+    void setCacheKey(String cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
+    /**
+     * 网络验证返回304，内存缓存中的结果重新算作新的
+     */
+    void refreshBeanCache() {
+        if(cacheKey != null)
+            BeanCache.getInstance().refresh(cacheKey, System.currentTimeMillis());
+    }
+
+    /**
+     * 直接返回内存缓存中的结果，不需要解析
+     */
+    @SuppressWarnings("unchecked")
+    void onCachedBean(final HttpClient httpClient, final HttpResponse response, final BaseBean bean) {
+        DecodeScheduler.getInstance().post(new Runnable() {
+            @Override
+            public void run() {
+                onResponse(httpClient, response, (T) bean);
+            }
+        });
+    }
+
     @Override
     public void onResponse(final HttpClient httpClient, final HttpResponse response) {
-        new AsyncTask<Type, Void, T>() {
+        //在其它线程读取，回调返回后HttpClient不能关闭响应
+        response.body().retain();
+        //合并请求时只由第一个订阅者统计
+        final RequestMetrics metrics = response.metrics() != null && response.metrics().claim() ? response.metrics() : null;
+        if(decodeInline) {
+            decodeInline(httpClient, response, metrics);
+            return;
+        }
+        DecodeScheduler.getInstance().execute(decodePriority, new DecodeScheduler.Task<T>() {
 
             @Override
-            protected T doInBackground(Type... params) {
+            protected T doInBackground() {
                 try {
-                    String jsonString = new String(response.body().bytes(), "UTF-8");
-                    if(!response.isCacheResponse()) {
-                        L.d("BeanRequest", "Response=" + jsonString);
-                    }
-                    return JSON.parseObject(jsonString, getType());
+                    return parseBean(response);
                 } catch (Exception e) {
                     L.e(e);
                     return null;
@@ -39,14 +155,107 @@ public abstract class BeanResponse<T extends BaseBean> extends OnHttpResponseLis
 
             @Override
             protected void onPostExecute(T bean) {
-                //new api: status响应结果，0表示请求成功，1表示请求失败，2表示需登录但未登录或登录超时
-                if(!"ok".equals(bean.getStatus()) && !"0".equals(bean.getStatus())) {
-                    onFailure(httpClient, response.request(), new BeanStatusException(TextUtils.isEmpty(bean.getErrorMsg()) ? bean.getMessage() : bean.getErrorMsg(), bean));
-                    return;
+                if(L.debug)
+                    L.d("BeanRequest", "URL=" + response.url() + " queueWait=" + getQueueWaitMillis() + "ms decode=" + getDecodeMillis() + "ms");
+                long start = SystemClock.uptimeMillis();
+                deliver(httpClient, response, bean);
+                if(metrics != null) {
+                    metrics.decodeWaitMillis = getQueueWaitMillis();
+                    metrics.decodeMillis = getDecodeMillis();
+                    metrics.deliveryMillis = getDeliveryWaitMillis() + SystemClock.uptimeMillis() - start;
+                    metrics.finish();
                 }
-                onResponse(httpClient, response, bean);
             }
-        }.execute();
+        });
+    }
+
+    /**
+     * 在当前的网络线程解析，只切换一次线程
+     */
+    private void decodeInline(final HttpClient httpClient, final HttpResponse response, final RequestMetrics metrics) {
+        long start = SystemClock.uptimeMillis();
+        T parsed;
+        try {
+            parsed = parseBean(response);
+        } catch (Exception e) {
+            L.e(e);
+            parsed = null;
+        }
+        final T bean = parsed;
+        final long decodeMillis = SystemClock.uptimeMillis() - start;
+        final long postTime = SystemClock.uptimeMillis();
+        DecodeScheduler.getInstance().post(new Runnable() {
+            @Override
+            public void run() {
+                deliver(httpClient, response, bean);
+                if(metrics != null) {
+                    metrics.decodeWaitMillis = 0;
+                    metrics.decodeMillis = decodeMillis;
+                    metrics.deliveryMillis = SystemClock.uptimeMillis() - postTime;
+                    metrics.finish();
+                }
+            }
+        });
+    }
+
+    /**
+     * 检查解析结果的状态并回调，在主线程调用
+     */
+    void deliver(HttpClient httpClient, HttpResponse response, T bean) {
+        if(bean == null) {
+            onFailure(httpClient, response.request(), new Exception("Can't parse response: " + response));
+            return;
+        }
+        //new api: status响应结果，0表示请求成功，1表示请求失败，2表示需登录但未登录或登录超时
+        if(!"ok".equals(bean.getStatus()) && !"0".equals(bean.getStatus())) {
+            onFailure(httpClient, response.request(), new BeanStatusException(TextUtils.isEmpty(bean.getErrorMsg()) ? bean.getMessage() : bean.getErrorMsg(), bean));
+            return;
+        }
+        if(cacheKey != null) {
+            putBeanCache(response, bean);
+        }
+        onResponse(httpClient, response, bean);
+    }
+
+    private void putBeanCache(HttpResponse response, T bean) {
+        long receivedMillis = System.currentTimeMillis();
+        String received = response.header(HttpClient.RECEIVED_MILLIS);
+        if(received != null) {
+            try {
+                receivedMillis = Long.parseLong(received);
+            } catch (NumberFormatException e) {
+                L.e(e);
+            }
+        }
+        BeanCache.getInstance().put(cacheKey, new BeanCache.Entry(bean, receivedMillis,
+                (int) Math.min(response.body().byteCount(), Integer.MAX_VALUE)));
+    }
+
+    /**
+     * 直接从响应流解析，不再经过 byte[] -> String 的复制；调试模式下需要打印响应内容或设置了
+     * {@link #setKeepBody(boolean)} 时才完整读入内存。
+     * 调试模式下解析后同样丢弃响应内容，与release版本的行为一致
+     */
+    T parseBean(HttpResponse response) throws IOException {
+        HttpResponseBody body = response.body();
+        if(keepBody || L.debug) {
+            //合并请求的多个订阅者共享已读入内存的响应，不能丢弃
+            boolean shared = body.isMaterialized();
+            String jsonString = body.string();
+            if(L.debug && !response.isCacheResponse())
+                L.d("BeanRequest", "Response=" + jsonString);
+            T bean = JSON.parseObject(jsonString, getType());
+            if(!keepBody && !shared)
+                body.discard();
+            return bean;
+        }
+
+        JSONReader reader = new JSONReader(new InputStreamReader(body.byteStream(), "UTF-8"));
+        try {
+            return reader.readObject(getType());
+        } finally {
+            reader.close();
+        }
     }
 
     public abstract void onResponse(final HttpClient httpClient, final HttpResponse response, T bean);
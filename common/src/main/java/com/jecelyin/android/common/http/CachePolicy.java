@@ -0,0 +1,74 @@
+package com.jecelyin.android.common.http;
+
+import com.squareup.okhttp.CacheControl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存策略：
+ * <ul>
+ *     <li>缓存时间不超过 maxAge 时直接使用缓存，不再请求网络</li>
+ *     <li>超过 maxAge 但不超过 maxAge + staleWhileRevalidate 时先返回缓存，
+ *     再带上 ETag/Last-Modified 条件请求网络，服务器返回304时不再重复回调结果，
+ *     而是调用 {@link OnHttpResponseListener#onNotModified}</li>
+ *     <li>更旧的缓存直接忽略，只请求网络</li>
+ * </ul>
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public final class CachePolicy {
+    /** 总是先返回缓存，再到网络验证 */
+    public static final CachePolicy REVALIDATE = new CachePolicy(0, Integer.MAX_VALUE);
+    /**
+     * 网络验证使用的请求缓存控制：由okhttp带上磁盘缓存的ETag/Last-Modified，
+     * 服务器返回304时okhttp合并响应头并更新缓存的接收时间
+     */
+    static final CacheControl CONDITIONAL = new CacheControl.Builder().maxAge(0, TimeUnit.SECONDS).build();
+
+    private final int maxAgeSeconds;
+    private final int staleWhileRevalidateSeconds;
+
+    public CachePolicy(int maxAgeSeconds, int staleWhileRevalidateSeconds) {
+        if(maxAgeSeconds < 0) throw new IllegalArgumentException("maxAgeSeconds < 0: " + maxAgeSeconds);
+        if(staleWhileRevalidateSeconds < 0) throw new IllegalArgumentException("staleWhileRevalidateSeconds < 0: " + staleWhileRevalidateSeconds);
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.staleWhileRevalidateSeconds = staleWhileRevalidateSeconds;
+    }
+
+    public int maxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    public int staleWhileRevalidateSeconds() {
+        return staleWhileRevalidateSeconds;
+    }
+
+    /** 缓存足够新，不需要请求网络 */
+    boolean isFresh(long ageMillis) {
+        return ageMillis <= maxAgeSeconds * 1000L;
+    }
+
+    /** 缓存可以先返回，同时到网络验证 */
+    boolean isUsableWhileRevalidating(long ageMillis) {
+        return ageMillis <= maxAgeSeconds * 1000L + staleWhileRevalidateSeconds * 1000L;
+    }
+
+    /**
+     * 缓存响应距离从网络接收时的毫秒数，没有接收时间时返回 Long.MAX_VALUE
+     */
+    static long ageOf(HttpResponse response) {
+        String received = response.header(HttpClient.RECEIVED_MILLIS);
+        if(received == null)
+            return Long.MAX_VALUE;
+        try {
+            return Math.max(0, System.currentTimeMillis() - Long.parseLong(received));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CachePolicy{maxAge=" + maxAgeSeconds + ", staleWhileRevalidate=" + staleWhileRevalidateSeconds + '}';
+    }
+}
@@ -0,0 +1,19 @@
+package com.jecelyin.android.common.http;
+
+import java.io.IOException;
+
+/**
+ * 请求被 {@link HttpClient#cancel(String)} 取消，不是网络错误
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public class CanceledException extends IOException {
+
+    public CanceledException() {
+        super("Canceled");
+    }
+
+    public CanceledException(Throwable cause) {
+        super("Canceled", cause);
+    }
+}
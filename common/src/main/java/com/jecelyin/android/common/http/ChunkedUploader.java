@@ -0,0 +1,302 @@
+package com.jecelyin.android.common.http;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.jecelyin.android.common.utils.CyptoUtils;
+import com.jecelyin.android.common.utils.L;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.MultipartBuilder;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * 大文件分块上传，每块直接从磁盘读取。已确认上传的偏移保存在SharedPreferences，
+ * 失败或进程重启后再次调用 {@link #start} 会从断点继续。
+ * 每块以 multipart/form-data POST 发送，字段为 uploadId、fileName、offset、total 和文件块 chunk，
+ * 并带上 Content-Range: bytes start-end/total 请求头，服务器返回2xx表示该块已保存。
+ * 空文件只发送一个空块，Content-Range 为 bytes *&#47;0。
+ *
+ * 分块请求经过 {@link HttpClient} 的优先级调度，owner销毁时随 {@link HttpClient#cancelAll(Object)} 取消，不再回调。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public class ChunkedUploader {
+    private static final String PREFS_NAME = "chunked_upload";
+    private static final int DEFAULT_CHUNK_SIZE = 512 * 1024;
+    /** 读取断点 */
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final Sender sender;
+    private final OffsetStore offsets;
+    /** 回调Callback的线程 */
+    private final Executor callbackExecutor;
+    private final String url;
+    private final File file;
+    private final String uploadId;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private RequestPriority priority = RequestPriority.USER_VISIBLE;
+    private volatile boolean canceled;
+    private volatile String currentTag;
+
+    public interface Callback {
+        void onProgress(long uploaded, long total);
+
+        /**
+         * @param response 最后一块的响应内容
+         */
+        void onComplete(String response);
+
+        /**
+         * 已上传的部分会保留，再次调用start()继续上传
+         */
+        void onFailure(Exception e);
+    }
+
+    /**
+     * 发送分块请求，默认经过 {@link HttpClient}
+     */
+    interface Sender {
+        void send(Request request, RequestPriority priority, OnHttpResponseListener<Object> listener);
+
+        void cancel(String tag);
+    }
+
+    /**
+     * 保存已确认上传的偏移，默认使用SharedPreferences
+     */
+    interface OffsetStore {
+        long get(String uploadId);
+
+        void put(String uploadId, long offset);
+
+        void remove(String uploadId);
+    }
+
+    /**
+     * @param context 同时作为请求的owner
+     */
+    public ChunkedUploader(Context context, String url, File file) {
+        this(HttpClient.newInstance(context), url, file);
+    }
+
+    public ChunkedUploader(final HttpClient httpClient, String url, File file) {
+        this(new Sender() {
+            @Override
+            public void send(Request request, RequestPriority priority, OnHttpResponseListener<Object> listener) {
+                httpClient.request(request, priority, listener);
+            }
+
+            @Override
+            public void cancel(String tag) {
+                httpClient.cancel(tag);
+            }
+        }, new PrefsOffsetStore(httpClient.getContext().getApplicationContext()), new Executor() {
+            private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+            @Override
+            public void execute(Runnable command) {
+                mainHandler.post(command);
+            }
+        }, url, file);
+    }
+
+    ChunkedUploader(Sender sender, OffsetStore offsets, Executor callbackExecutor, String url, File file) {
+        this.sender = sender;
+        this.offsets = offsets;
+        this.callbackExecutor = callbackExecutor;
+        this.url = url;
+        this.file = file;
+        this.uploadId = CyptoUtils.md5(url + "|" + file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified());
+    }
+
+    public ChunkedUploader setChunkSize(int chunkSize) {
+        if(chunkSize <= 0) throw new IllegalArgumentException("chunkSize <= 0: " + chunkSize);
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * 默认 {@link RequestPriority#USER_VISIBLE}，后台上传可以设为 {@link RequestPriority#BACKGROUND}
+     */
+    public ChunkedUploader setPriority(RequestPriority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public void start(final Callback callback) {
+        canceled = false;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                sendChunk(offsets.get(uploadId), file.length(), callback);
+            }
+        });
+    }
+
+    public void cancel() {
+        canceled = true;
+        String tag = currentTag;
+        if(tag != null)
+            sender.cancel(tag);
+    }
+
+    static String contentRange(long offset, long length, long total) {
+        if(total == 0)
+            return "bytes */0";
+        return "bytes " + offset + "-" + (offset + length - 1) + "/" + total;
+    }
+
+    private void sendChunk(final long offset, final long total, final Callback callback) {
+        if(canceled) {
+            notifyFailure(callback, new CanceledException());
+            return;
+        }
+        final long length = Math.min(chunkSize, total - offset);
+        MediaType mediaType = MediaType.parse(HttpClient.getMimeType(file.getName()));
+        RequestBody body = new MultipartBuilder()
+                .type(MultipartBuilder.FORM)
+                .addFormDataPart("uploadId", uploadId)
+                .addFormDataPart("fileName", file.getName())
+                .addFormDataPart("offset", String.valueOf(offset))
+                .addFormDataPart("total", String.valueOf(total))
+                .addFormDataPart("chunk", file.getName(), fileSlice(mediaType, file, offset, length))
+                .build();
+        String tag = "ChunkedUpload-" + uploadId + "-" + offset;
+        Request request = new Request.Builder()
+                .url(url)
+                .header("Content-Range", contentRange(offset, length, total))
+                .post(new ProgressRequestBody(body, null, false))
+                .tag(tag)
+                .build();
+        currentTag = tag;
+        sender.send(request, priority, new OnHttpResponseListener<Object>() {
+            @Override
+            public void onFailure(HttpClient httpClient, HttpRequest request, Exception e) {
+                notifyFailure(callback, e);
+            }
+
+            @Override
+            public void onResponse(HttpClient httpClient, HttpResponse response) {
+                String result;
+                try {
+                    if(!response.isSuccessful())
+                        throw new IOException("Upload chunk failed: " + response.code() + " " + response.message());
+                    result = response.body().string();
+                } catch (IOException e) {
+                    notifyFailure(callback, e);
+                    return;
+                } finally {
+                    response.body().close();
+                }
+
+                long uploaded = offset + length;
+                notifyProgress(callback, uploaded, total);
+                if(uploaded < total) {
+                    offsets.put(uploadId, uploaded);
+                    sendChunk(uploaded, total, callback);
+                } else {
+                    currentTag = null;
+                    offsets.remove(uploadId);
+                    notifyComplete(callback, result);
+                }
+            }
+        });
+    }
+
+    private void notifyProgress(final Callback callback, final long uploaded, final long total) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onProgress(uploaded, total);
+            }
+        });
+    }
+
+    private void notifyComplete(final Callback callback, final String response) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onComplete(response);
+            }
+        });
+    }
+
+    private void notifyFailure(final Callback callback, final Exception e) {
+        currentTag = null;
+        L.e(e);
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onFailure(e);
+            }
+        });
+    }
+
+    private static final class PrefsOffsetStore implements OffsetStore {
+        private final SharedPreferences prefs;
+
+        PrefsOffsetStore(Context context) {
+            prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        }
+
+        @Override
+        public long get(String uploadId) {
+            return prefs.getLong(uploadId, 0);
+        }
+
+        @Override
+        public void put(String uploadId, long offset) {
+            prefs.edit().putLong(uploadId, offset).apply();
+        }
+
+        @Override
+        public void remove(String uploadId) {
+            prefs.edit().remove(uploadId).apply();
+        }
+    }
+
+    /**
+     * 文件的一部分，写出时才从磁盘读取
+     */
+    private static RequestBody fileSlice(final MediaType contentType, final File file, final long offset, final long length) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                BufferedSource source = Okio.buffer(Okio.source(file));
+                try {
+                    source.skip(offset);
+                    sink.write(source, length);
+                } finally {
+                    source.close();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,216 @@
+package com.jecelyin.android.common.http;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import com.jecelyin.android.common.utils.L;
+import com.squareup.okhttp.CacheControl;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 应用启动时在后台预先完成到API服务器的DNS解析、TCP和TLS握手（支持时协商HTTP/2），
+ * 建立的连接留在连接池中供第一个请求复用。
+ * 在AndroidManifest.xml的Application标签下添加以下配置开启
+ * <meta-data android:name="http_prewarm" android:value="true" />
+ *
+ * 第一个真正发到网络的请求会记录耗时和是否复用了预热的连接。没有复用预热连接的启动
+ * （未开启预热或预热还没完成）作为基线保存，{@link #report()} 给出预热节省的时间。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public class ConnectionPrewarmer {
+    private static final String TAG = "ConnectionPrewarmer";
+    private static final String PREFS_NAME = "http_prewarm";
+    private static final String KEY_BASELINE = "baseline_first_request_ms";
+
+    private static final AtomicBoolean firstRequest = new AtomicBoolean(true);
+    private static volatile Object firstRequestTag;
+    private static volatile Connection prewarmedConnection;
+    private static volatile long prewarmMillis = -1;
+    private static volatile String prewarmProtocol;
+    private static volatile long firstRequestMillis = -1;
+    private static volatile boolean firstRequestFailed;
+    private static volatile boolean firstRequestReused;
+    private static volatile long baselineMillis = -1;
+
+    public static void prewarm(Context context, String url) {
+        if(TextUtils.isEmpty(url))
+            return;
+        HttpClient.newInstance(context);
+        prewarm(HttpClient.okHttpClient(), url);
+    }
+
+    static void prewarm(OkHttpClient client, String url) {
+        Request request;
+        try {
+            request = new Request.Builder()
+                    .url(url)
+                    .head()
+                    .cacheControl(CacheControl.FORCE_NETWORK)
+                    .tag(TAG)
+                    .build();
+        } catch (IllegalArgumentException e) {
+            L.e(e);
+            return;
+        }
+
+        final long start = SystemClock.uptimeMillis();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Request request, IOException e) {
+                L.d(TAG, "prewarm failed: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Response response) throws IOException {
+                prewarmProtocol = String.valueOf(response.protocol());
+                response.body().close();
+                prewarmMillis = SystemClock.uptimeMillis() - start;
+                if(L.debug)
+                    L.d(TAG, "prewarm " + prewarmProtocol + " in " + prewarmMillis + "ms");
+            }
+        });
+    }
+
+    /**
+     * 安装网络拦截器，记录预热请求和第一个请求各自使用的连接，由 {@link HttpClient} 创建客户端时调用
+     */
+    static void install(OkHttpClient client) {
+        client.networkInterceptors().add(new ConnectionInterceptor());
+    }
+
+    private static class ConnectionInterceptor implements Interceptor {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Object tag = chain.request().tag();
+            if(tag != null) {
+                if(TAG.equals(tag)) {
+                    if(firstRequestTag == null)
+                        prewarmedConnection = chain.connection();
+                } else if(tag.equals(firstRequestTag)) {
+                    Connection prewarmed = prewarmedConnection;
+                    firstRequestReused = prewarmed != null && prewarmed == chain.connection();
+                    prewarmedConnection = null;
+                }
+            }
+            return chain.proceed(chain.request());
+        }
+    }
+
+    /**
+     * 在请求真正发到网络前调用（不包括只读缓存的请求和重试）
+     * @return 是否是本次启动的第一个请求
+     */
+    static boolean claimFirstRequest(Object tag) {
+        if(!firstRequest.compareAndSet(true, false))
+            return false;
+        firstRequestTag = tag;
+        return true;
+    }
+
+    /**
+     * @param context 不为null时，未复用预热连接的成功请求会更新保存的基线
+     * @param failed 请求失败时也记录耗时，但不计入基线
+     */
+    static void recordFirstRequest(Context context, long millis, boolean failed) {
+        firstRequestMillis = millis;
+        firstRequestFailed = failed;
+        if(!failed && !firstRequestReused && context != null)
+            updateBaseline(context, millis);
+        if(L.debug)
+            L.d(TAG, report());
+    }
+
+    private static void updateBaseline(Context context, long millis) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long baseline = prefs.getLong(KEY_BASELINE, -1);
+        //指数平均，避免单次网络波动
+        baseline = baseline < 0 ? millis : (baseline * 3 + millis) / 4;
+        prefs.edit().putLong(KEY_BASELINE, baseline).apply();
+        baselineMillis = baseline;
+    }
+
+    private static long baselineMillis(Context context) {
+        if(baselineMillis < 0 && context != null)
+            baselineMillis = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).getLong(KEY_BASELINE, -1);
+        return baselineMillis;
+    }
+
+    /** 预热连接耗时，未完成时返回-1 */
+    public static long getPrewarmMillis() {
+        return prewarmMillis;
+    }
+
+    /** 第一个请求从发出到收到响应头（或失败）的耗时，未完成时返回-1 */
+    public static long getFirstRequestMillis() {
+        return firstRequestMillis;
+    }
+
+    /** 第一个请求是否使用了预热建立的连接 */
+    public static boolean isFirstRequestReused() {
+        return firstRequestReused;
+    }
+
+    /**
+     * 预热节省的时间：没有预热时第一个请求的平均耗时减去本次的耗时。
+     * 本次没有复用预热连接、请求失败或还没有基线时返回 {@link Long#MIN_VALUE}
+     */
+    public static long getSavedMillis(Context context) {
+        long baseline = baselineMillis(context);
+        if(!firstRequestReused || firstRequestFailed || firstRequestMillis < 0 || baseline < 0)
+            return Long.MIN_VALUE;
+        return baseline - firstRequestMillis;
+    }
+
+    /**
+     * 启动网络耗时报告，包括第一个请求是否复用了预热连接，以及与基线相比节省的时间
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder("Startup network: ");
+        if(prewarmMillis >= 0) {
+            sb.append("prewarm=").append(prewarmMillis).append("ms (").append(prewarmProtocol).append(") ");
+        } else {
+            sb.append("prewarm=n/a ");
+        }
+        if(firstRequestMillis >= 0) {
+            sb.append("firstRequest=").append(firstRequestMillis).append("ms");
+            if(firstRequestFailed)
+                sb.append(" failed");
+            sb.append(firstRequestReused ? " on prewarmed connection" : " without prewarmed connection");
+        } else {
+            sb.append("firstRequest=n/a");
+        }
+        long saved = getSavedMillis(null);
+        if(saved != Long.MIN_VALUE) {
+            sb.append(", saved=").append(saved).append("ms vs baseline ").append(baselineMillis).append("ms");
+        } else {
+            sb.append(", baseline=").append(baselineMillis >= 0 ? baselineMillis + "ms" : "n/a");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 恢复到启动时的状态，用于测试
+     */
+    static void reset() {
+        firstRequest.set(true);
+        firstRequestTag = null;
+        prewarmedConnection = null;
+        prewarmMillis = -1;
+        prewarmProtocol = null;
+        firstRequestMillis = -1;
+        firstRequestFailed = false;
+        firstRequestReused = false;
+        baselineMillis = -1;
+    }
+}
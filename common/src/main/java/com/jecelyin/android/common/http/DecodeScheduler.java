@@ -0,0 +1,209 @@
+package com.jecelyin.android.common.http;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 响应解析线程池，代替 AsyncTask 的串行执行器，避免一个大响应阻塞其它页面的解析。
+ * 任务按优先级出队，解析结果切回主线程回调。
+ * 可通过 {@link #setInstance(DecodeScheduler)} 替换为自定义实现。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public class DecodeScheduler {
+    /** 用户正在等待的请求 */
+    public static final int PRIORITY_FOREGROUND = 0;
+    /** 预加载等不影响当前界面的请求 */
+    public static final int PRIORITY_BACKGROUND = 10;
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int POOL_SIZE = Math.max(2, Math.min(CPU_COUNT - 1, 4));
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static DecodeScheduler instance;
+
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicInteger taskCount = new AtomicInteger();
+    private final AtomicLong totalQueueWait = new AtomicLong();
+    private final AtomicLong maxQueueWait = new AtomicLong();
+    private final AtomicLong totalDecodeTime = new AtomicLong();
+    private final AtomicLong maxDecodeTime = new AtomicLong();
+
+    public static abstract class Task<T> {
+        private int priority;
+        private long seq;
+        private long enqueueTime;
+        private long queueWaitMillis;
+        private long decodeMillis;
+        private long postTime;
+        private long deliveryWaitMillis;
+
+        /** 在解析线程执行 */
+        protected abstract T doInBackground();
+
+        /** 在主线程执行 */
+        protected abstract void onPostExecute(T result);
+
+        public int getPriority() {
+            return priority;
+        }
+
+        /** 从提交到开始执行的等待时间 */
+        public long getQueueWaitMillis() {
+            return queueWaitMillis;
+        }
+
+        /** doInBackground 的执行时间 */
+        public long getDecodeMillis() {
+            return decodeMillis;
+        }
+
+        /** 解析完成后等待主线程执行 onPostExecute 的时间 */
+        public long getDeliveryWaitMillis() {
+            return deliveryWaitMillis;
+        }
+    }
+
+    public DecodeScheduler() {
+        this(POOL_SIZE);
+    }
+
+    public DecodeScheduler(int poolSize) {
+        executor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "DecodeScheduler #" + count.getAndIncrement());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public synchronized static DecodeScheduler getInstance() {
+        if(instance == null) {
+            instance = new DecodeScheduler();
+        }
+        return instance;
+    }
+
+    public synchronized static void setInstance(DecodeScheduler scheduler) {
+        instance = scheduler;
+    }
+
+    public <T> void execute(Task<T> task) {
+        execute(PRIORITY_FOREGROUND, task);
+    }
+
+    public <T> void execute(int priority, Task<T> task) {
+        task.priority = priority;
+        task.seq = sequence.getAndIncrement();
+        task.enqueueTime = SystemClock.uptimeMillis();
+        executor.execute(new Job<>(task));
+    }
+
+    /**
+     * 切回主线程
+     */
+    public void post(Runnable runnable) {
+        mainHandler.post(runnable);
+    }
+
+    public int getTaskCount() {
+        return taskCount.get();
+    }
+
+    public long getAverageQueueWaitMillis() {
+        int count = taskCount.get();
+        return count == 0 ? 0 : totalQueueWait.get() / count;
+    }
+
+    public long getMaxQueueWaitMillis() {
+        return maxQueueWait.get();
+    }
+
+    public long getAverageDecodeMillis() {
+        int count = taskCount.get();
+        return count == 0 ? 0 : totalDecodeTime.get() / count;
+    }
+
+    public long getMaxDecodeMillis() {
+        return maxDecodeTime.get();
+    }
+
+    public void resetStats() {
+        taskCount.set(0);
+        totalQueueWait.set(0);
+        maxQueueWait.set(0);
+        totalDecodeTime.set(0);
+        maxDecodeTime.set(0);
+    }
+
+    private void record(long queueWait, long decodeTime) {
+        taskCount.incrementAndGet();
+        totalQueueWait.addAndGet(queueWait);
+        totalDecodeTime.addAndGet(decodeTime);
+        updateMax(maxQueueWait, queueWait);
+        updateMax(maxDecodeTime, decodeTime);
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if(max.compareAndSet(current, value))
+                return;
+        }
+    }
+
+    private class Job<T> implements Runnable, Comparable<Job<?>> {
+        private final Task<T> task;
+
+        Job(Task<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long start = SystemClock.uptimeMillis();
+            task.queueWaitMillis = start - task.enqueueTime;
+            final T result = task.doInBackground();
+            task.decodeMillis = SystemClock.uptimeMillis() - start;
+            record(task.queueWaitMillis, task.decodeMillis);
+
+            task.postTime = SystemClock.uptimeMillis();
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    task.deliveryWaitMillis = SystemClock.uptimeMillis() - task.postTime;
+                    task.onPostExecute(result);
+                }
+            });
+        }
+
+        @Override
+        public int compareTo(Job<?> another) {
+            if(task.priority != another.task.priority)
+                return task.priority < another.task.priority ? -1 : 1;
+            return task.seq < another.task.seq ? -1 : (task.seq == another.task.seq ? 0 : 1);
+        }
+    }
+}
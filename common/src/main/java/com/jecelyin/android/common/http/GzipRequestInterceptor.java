@@ -1,5 +1,8 @@
 package com.jecelyin.android.common.http;
 
+import android.os.SystemClock;
+
+import com.jecelyin.android.common.utils.L;
 import com.squareup.okhttp.Interceptor;
 import com.squareup.okhttp.MediaType;
 import com.squareup.okhttp.Request;
@@ -7,28 +10,131 @@ import com.squareup.okhttp.RequestBody;
 import com.squareup.okhttp.Response;
 
 import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
+import okio.Buffer;
 import okio.BufferedSink;
 import okio.GzipSink;
 import okio.Okio;
 
 /**
+ * 请求体gzip压缩。以下情况不压缩：
+ * <ul>
+ *     <li>长度已知且小于 minSize 的小请求，压缩后反而更大，还会导致分块传输</li>
+ *     <li>已压缩的内容类型，见 {@link #isCompressible(MediaType)}</li>
+ *     <li>压缩后没有变小</li>
+ * </ul>
+ * 长度不超过 bufferLimit 的请求体先在内存中压缩，得到确定的 Content-Length；
+ * 更大的请求体流式压缩，使用分块传输。
+ *
  * @author Jecelyin <jecelyin@gmail.com>
  */
 public class GzipRequestInterceptor implements Interceptor {
+    public static final long DEFAULT_MIN_SIZE = 1024;
+    public static final long DEFAULT_BUFFER_LIMIT = 256 * 1024;
+
+    private final long minSize;
+    private final long bufferLimit;
+    private final int level;
+
+    public GzipRequestInterceptor() {
+        this(DEFAULT_MIN_SIZE, DEFAULT_BUFFER_LIMIT, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level 压缩级别，见 {@link Deflater#setLevel(int)}，只对内存中压缩的请求体有效
+     */
+    public GzipRequestInterceptor(long minSize, long bufferLimit, int level) {
+        this.minSize = minSize;
+        this.bufferLimit = bufferLimit;
+        this.level = level;
+    }
+
     @Override public Response intercept(Chain chain) throws IOException {
         Request originalRequest = chain.request();
         if (originalRequest.body() == null || originalRequest.header("Content-Encoding") != null) {
             return chain.proceed(originalRequest);
         }
+        RequestBody body = originalRequest.body();
+        if (body instanceof ProgressRequestBody && !((ProgressRequestBody) body).isCompressible()) {
+            return chain.proceed(originalRequest);
+        }
+        if (!isCompressible(body.contentType())) {
+            return chain.proceed(originalRequest);
+        }
+
+        long length = body.contentLength();
+        if (length >= 0 && length < minSize) {
+            return chain.proceed(originalRequest);
+        }
+
+        RequestBody compressedBody;
+        if (length >= 0 && length <= bufferLimit && !(body instanceof ProgressRequestBody)) {
+            compressedBody = gzipBuffered(body, length);
+            if (compressedBody == null) {
+                return chain.proceed(originalRequest);
+            }
+        } else {
+            compressedBody = gzip(body);
+        }
 
         Request compressedRequest = originalRequest.newBuilder()
                 .header("Content-Encoding", "gzip")
-                .method(originalRequest.method(), gzip(originalRequest.body()))
+                .method(originalRequest.method(), compressedBody)
                 .build();
         return chain.proceed(compressedRequest);
     }
 
+    /**
+     * 在内存中压缩，得到压缩后的长度；压缩后没有变小时返回null
+     */
+    private RequestBody gzipBuffered(RequestBody body, long length) throws IOException {
+        long start = L.debug ? SystemClock.uptimeMillis() : 0;
+        final Buffer buffer = new Buffer();
+        GZIPOutputStream gzip = new GZIPOutputStream(buffer.outputStream()) {
+            {
+                def.setLevel(level);
+            }
+        };
+        BufferedSink sink = Okio.buffer(Okio.sink(gzip));
+        body.writeTo(sink);
+        sink.close();
+        if (L.debug)
+            L.d("GzipRequest", "gzip " + length + " -> " + buffer.size() + " bytes in " + (SystemClock.uptimeMillis() - start) + "ms");
+        if (buffer.size() >= length) {
+            return null;
+        }
+        return RequestBody.create(body.contentType(), buffer.readByteString());
+    }
+
+    /**
+     * 图片、音视频、压缩包等已压缩的内容再gzip只会浪费CPU
+     */
+    public static boolean isCompressible(MediaType mediaType) {
+        if (mediaType == null)
+            return true;
+        String type = mediaType.type();
+        String subtype = mediaType.subtype();
+        if ("video".equals(type) || "audio".equals(type))
+            return false;
+        if ("image".equals(type))
+            return subtype.contains("svg") || "bmp".equals(subtype);
+        if ("application".equals(type)) {
+            switch (subtype) {
+                case "zip":
+                case "gzip":
+                case "x-gzip":
+                case "x-7z-compressed":
+                case "x-rar-compressed":
+                case "vnd.android.package-archive":
+                case "octet-stream":
+                    return false;
+            }
+        }
+        return true;
+    }
+
     private RequestBody gzip(final RequestBody body) {
         return new RequestBody() {
             @Override public MediaType contentType() {
@@ -2,16 +2,22 @@ package com.jecelyin.android.common.http;
 
 import android.content.Context;
 import android.content.DialogInterface;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.webkit.MimeTypeMap;
 
 import com.jecelyin.android.common.api.AbstractApi;
+import com.jecelyin.android.common.utils.CyptoUtils;
 import com.jecelyin.android.common.utils.L;
 import com.jecelyin.android.common.utils.SysUtils;
 import com.jecelyin.android.common.widget.ProgressHUD;
 import com.squareup.okhttp.Cache;
 import com.squareup.okhttp.CacheControl;
 import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Headers;
 import com.squareup.okhttp.MediaType;
 import com.squareup.okhttp.MultipartBuilder;
 import com.squareup.okhttp.OkHttpClient;
@@ -22,9 +28,16 @@ import com.squareup.okhttp.Response;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -32,44 +45,134 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @author Jecelyin <jecelyin@gmail.com>
  */
 public class HttpClient {
+    /** okhttp 写入缓存响应头的接收时间 */
+    static final String RECEIVED_MILLIS = "OkHttp-Received-Millis";
     private static OkHttpClient client;
+    private static HttpClientConfig config;
+    private static final Map<String, OkHttpClient> timeoutClients = new HashMap<>();
+    private static final Handler retryHandler = new Handler(Looper.getMainLooper());
+    private static PriorityDispatcher dispatcher;
+    /** owner -> 进行中的请求tag */
+    private static final Map<Object, Set<String>> ownerTags = new WeakHashMap<>();
+    /** 被 {@link #cancelAll(Object)} 取消的网络请求tag，它们的结果不再回调监听者 */
+    private static final Set<String> canceledCalls = new HashSet<>();
+    /** {@link RequestBatcher} 合并发送的请求tag，没有自己的网络请求，cancelAll时只注销登记 */
+    private static final Set<String> batchedTags = new HashSet<>();
     private final Context context;
+    private final Object owner;
     private ProgressHUD mProgressHUD;
-    private boolean useCache = false;
+    private CachePolicy cachePolicy;
+    private RequestPriority priority;
     private static boolean debug;
     private static AtomicInteger requestCount = new AtomicInteger(0);
 
-    private HttpClient(Context context) {
+    private HttpClient(Context context, Object owner) {
         this.context = context;
+        this.owner = owner;
         debug = SysUtils.isDebug(context);
     }
 
-    public synchronized static HttpClient newInstance(Context context) {
+    public static HttpClient newInstance(Context context) {
+        return newInstance(context, context);
+    }
+
+    /**
+     * @param owner 请求的所有者，调用 {@link #cancelAll(Object)} 时取消它的所有请求
+     */
+    public synchronized static HttpClient newInstance(Context context, Object owner) {
         if(client == null) {
-            int cacheSize = 10 * 1024 * 1024; // 10 MiB
-            File cacheDirectory = new File(context.getCacheDir(), "http");
-            Cache cache = new Cache(cacheDirectory, cacheSize);
+            if(config == null)
+                config = new HttpClientConfig.Builder().build();
             client = new OkHttpClient();
-            client.setCache(cache);
-            client.interceptors().add(new GzipRequestInterceptor());
-            client.setReadTimeout(180, TimeUnit.SECONDS);
-            client.setConnectTimeout(30, TimeUnit.SECONDS);
+            if(config.cacheSize > 0) {
+                File cacheDirectory = config.cacheDirectory != null ? config.cacheDirectory : new File(context.getCacheDir(), "http");
+                client.setCache(new Cache(cacheDirectory, config.cacheSize));
+            }
+            client.setConnectionPool(new ConnectionPool(config.maxIdleConnections, config.keepAliveDurationMs));
+            client.getDispatcher().setMaxRequests(config.maxRequests);
+            client.getDispatcher().setMaxRequestsPerHost(config.maxRequestsPerHost);
+            client.interceptors().add(new GzipRequestInterceptor(config.gzipMinSize, config.gzipBufferLimit, config.gzipLevel));
+            if(config.metricsEnabled)
+                HttpMetrics.getInstance().install(client);
+            ConnectionPrewarmer.install(client);
+            client.setConnectTimeout(config.connectTimeoutMs, TimeUnit.MILLISECONDS);
+            client.setReadTimeout(config.readTimeoutMs, TimeUnit.MILLISECONDS);
+            client.setWriteTimeout(config.writeTimeoutMs, TimeUnit.MILLISECONDS);
+            dispatcher = new PriorityDispatcher(config.maxDeferredRequests);
         }
 
-        return new HttpClient(context);
+        return new HttpClient(context, owner);
+    }
+
+    static OkHttpClient okHttpClient() {
+        return client;
+    }
+
+    /**
+     * 设置网络配置，在第一次调用 {@link #newInstance(Context)} 之前调用才生效
+     */
+    public synchronized static void setConfig(HttpClientConfig config) {
+        if(client != null) {
+            L.w("HttpClient", "setConfig() must be called before the first newInstance()");
+            return;
+        }
+        HttpClient.config = config;
+    }
+
+    /**
+     * Api自定义了超时时间时，使用共享连接池、缓存和调度器的克隆客户端
+     */
+    private synchronized static OkHttpClient clientFor(AbstractApi api) {
+        long connectTimeout = api.getConnectTimeout();
+        long readTimeout = api.getReadTimeout();
+        if(connectTimeout <= 0 && readTimeout <= 0)
+            return client;
+        String key = connectTimeout + "/" + readTimeout;
+        OkHttpClient c = timeoutClients.get(key);
+        if(c == null) {
+            c = client.clone();
+            if(connectTimeout > 0)
+                c.setConnectTimeout(connectTimeout, TimeUnit.MILLISECONDS);
+            if(readTimeout > 0)
+                c.setReadTimeout(readTimeout, TimeUnit.MILLISECONDS);
+            timeoutClients.put(key, c);
+        }
+        return c;
     }
 
     public Context getContext() {
         return context;
     }
 
-    private String getTagAndCount() {
+    String getTagAndCount() {
         int num = requestCount.incrementAndGet();
         return "HttpRequest-"+num;
     }
 
+    /**
+     * 等同于 {@code setCachePolicy(useCache ? CachePolicy.REVALIDATE : null)}
+     */
     public void setUseCache(boolean useCache) {
-        this.useCache = useCache;
+        setCachePolicy(useCache ? CachePolicy.REVALIDATE : null);
+    }
+
+    /**
+     * @param cachePolicy null表示不使用缓存
+     */
+    public void setCachePolicy(CachePolicy cachePolicy) {
+        this.cachePolicy = cachePolicy;
+    }
+
+    public CachePolicy getCachePolicy() {
+        return cachePolicy;
+    }
+
+    /**
+     * 覆盖Api的 {@link AbstractApi#getPriority()}，如同一个Api的预加载请求使用 {@link RequestPriority#PREFETCH}
+     * @param priority null表示使用Api的设置
+     */
+    public void setPriority(RequestPriority priority) {
+        this.priority = priority;
     }
 
     public boolean isDebug() {
@@ -79,7 +182,124 @@ public class HttpClient {
     public void cancel(String tag) {
         if(TextUtils.isEmpty(tag))
             return;
-        client.cancel(tag);
+        untrack(tag);
+        String callTag = InFlightRequests.cancel(tag);
+        if(callTag != null) {
+            dispatcher.cancel(callTag);
+            client.cancel(callTag);
+        }
+    }
+
+    /**
+     * 取消owner的所有请求，{@link com.jecelyin.android.common.app.JecActivity} 和
+     * {@link com.jecelyin.android.common.app.JecFragment} 销毁时会自动调用。
+     * 页面已经不存在，被取消的请求不会再回调监听者（包括 onFailure），不会在页面关闭后弹出错误提示
+     * @param owner {@link #newInstance(Context, Object)} 指定的owner，默认是Context
+     */
+    public static void cancelAll(Object owner) {
+        Set<String> tags;
+        synchronized (ownerTags) {
+            tags = ownerTags.remove(owner);
+        }
+        if(tags == null || client == null)
+            return;
+        for (String tag : tags) {
+            synchronized (ownerTags) {
+                if(batchedTags.remove(tag))
+                    continue;
+            }
+            String callTag = InFlightRequests.cancel(tag);
+            if(callTag != null) {
+                synchronized (canceledCalls) {
+                    canceledCalls.add(callTag);
+                }
+                dispatcher.cancel(callTag);
+                client.cancel(callTag);
+            }
+        }
+    }
+
+    /**
+     * @return true表示请求已被 {@link #cancelAll(Object)} 取消，调用方不要再回调监听者
+     */
+    private static boolean consumeCanceled(String tag) {
+        synchronized (canceledCalls) {
+            return canceledCalls.remove(tag);
+        }
+    }
+
+    private void track(String tag) {
+        synchronized (ownerTags) {
+            Set<String> tags = ownerTags.get(owner);
+            if(tags == null) {
+                tags = new HashSet<>();
+                ownerTags.put(owner, tags);
+            }
+            tags.add(tag);
+        }
+    }
+
+    boolean isTracked(String tag) {
+        synchronized (ownerTags) {
+            Set<String> tags = ownerTags.get(owner);
+            return tags != null && tags.contains(tag);
+        }
+    }
+
+    private void untrack(String tag) {
+        synchronized (ownerTags) {
+            Set<String> tags = ownerTags.get(owner);
+            if(tags != null)
+                tags.remove(tag);
+        }
+    }
+
+    /**
+     * 登记由 {@link RequestBatcher} 等待合并或已合并发送的请求，可以被 {@link #cancelAll(Object)} 取消
+     */
+    void trackBatched(String tag) {
+        synchronized (ownerTags) {
+            batchedTags.add(tag);
+        }
+        track(tag);
+    }
+
+    /**
+     * 注销合并发送的请求
+     * @return false表示已被取消，不要再回调监听者
+     */
+    boolean untrackBatched(String tag) {
+        synchronized (ownerTags) {
+            batchedTags.remove(tag);
+            Set<String> tags = ownerTags.get(owner);
+            return tags != null && tags.remove(tag);
+        }
+    }
+
+    private static final class CallOptions {
+        final OkHttpClient client;
+        final RequestPriority priority;
+        final RetryPolicy retryPolicy;
+        /** 统计耗时使用的名称，null表示使用URL路径 */
+        final String name;
+        /** 网络失败时放入离线队列的请求，null表示不排队 */
+        final OfflineQueue.Entry offline;
+
+        CallOptions(OkHttpClient client, RequestPriority priority, RetryPolicy retryPolicy, String name, OfflineQueue.Entry offline) {
+            this.client = client;
+            this.priority = priority;
+            this.retryPolicy = retryPolicy;
+            this.name = name;
+            this.offline = offline;
+        }
+
+        CallOptions(OkHttpClient client, RequestPriority priority) {
+            this(client, priority, null, null, null);
+        }
+
+        CallOptions(AbstractApi api, RequestPriority priority, OfflineQueue.Entry offline) {
+            this(clientFor(api), priority != null ? priority : api.getPriority(), api.getRetryPolicy(), api.getClass().getSimpleName(), offline);
+        }
     }
 
     public String request(AbstractApi api) {
@@ -95,7 +315,6 @@ public class HttpClient {
     public void request(String tag, AbstractApi api, OnHttpResponseListener listener) {
         String url = api.getUrl();
         Map<String, Object> params = api.getParams();
-        api.handleParams(context, params);
 
         String method;
         if(api.requestMethod() == AbstractApi.Method.POST)
@@ -105,7 +324,172 @@ public class HttpClient {
             method = "GET";
         }
 
-        request(tag, method, url, null, params, listener);
+        //签名等处理前的参数才是稳定的
+        String fingerprint = fingerprint(method, url, params);
+        //离线队列保存处理前的参数，重发时重新签名
+        Map<String, Object> rawParams = fingerprint != null && "POST".equals(method) && api.isOfflineQueueable()
+                && OfflineQueue.getInstance() != null ? new HashMap<>(params) : null;
+        api.handleParams(context, params);
+
+        if(listener instanceof BeanResponse && api.getBeanType() != null) {
+            ((BeanResponse<?>) listener).applyApiBeanType(api.getBeanType());
+        }
+
+        //与okhttp缓存一致，只缓存GET请求
+        if(fingerprint != null && cachePolicy != null && "GET".equals(method) && listener instanceof BeanResponse) {
+            BeanResponse<?> beanResponse = (BeanResponse<?>) listener;
+            String cacheKey = beanCacheKey(fingerprint, api.getCacheIdentity(context), beanResponse);
+            beanResponse.setCacheKey(cacheKey);
+            if(requestFromBeanCache(api, tag, method, url, params, cacheKey, beanResponse))
+                return;
+        }
+
+        OfflineQueue.Entry offline = null;
+        if(rawParams != null) {
+            String key = api.getIdempotencyKey();
+            if(key == null)
+                key = CyptoUtils.md5(fingerprint);
+            offline = new OfflineQueue.Entry(key, method, url, params, api.getClass().getName(), rawParams);
+            if(!OfflineQueue.isOnline(context)) {
+                OfflineQueue.getInstance().enqueue(offline);
+                dispatchFailure(this, listener, new HttpRequest(url, method, null, params, tag), new OfflineQueuedException());
+                return;
+            }
+        }
+
+        if(fingerprint != null && api.isCoalescable()) {
+            String key = cachePolicy + " " + fingerprint;
+            InFlightRequests.Group group = InFlightRequests.join(key, new InFlightRequests.Subscriber(this, tag, listener));
+            if(group == null) {
+                track(tag);
+                L.d("BeanRequest", "Coalesced URL=" + url);
+                return;
+            }
+            listener = new CoalescedListener(group);
+        }
+
+        request(new CallOptions(api, priority, offline), tag, method, url, null, params, cachePolicy, listener);
+    }
+
+    /**
+     * 是否有可以合并的相同请求正在进行
+     */
+    boolean isInFlight(AbstractApi api) {
+        if(!api.isCoalescable())
+            return false;
+        String method = api.requestMethod() == AbstractApi.Method.POST ? "POST" : "GET";
+        String fingerprint = fingerprint(method, api.getUrl(), api.getParams());
+        return fingerprint != null && InFlightRequests.contains(cachePolicy + " " + fingerprint);
+    }
+
+    /**
+     * 按方法、URL和排序后的参数生成请求指纹，含文件上传的请求返回null
+     */
+    private static String fingerprint(String method, String url, Map<String, Object> params) {
+        for (Object value : params.values()) {
+            if(value instanceof File || value instanceof Iterable)
+                return null;
+        }
+        return method + " " + url + "?" + new TreeMap<>(params);
+    }
+
+    /**
+     * 同一个请求对不同用户或解析为不同Bean类型时结果不同，都需要区分
+     */
+    private static String beanCacheKey(String fingerprint, String identity, BeanResponse<?> listener) {
+        return fingerprint + " @" + identity + " " + listener.getType();
+    }
+
+    /**
+     * 内存缓存可用时直接返回，需要验证时再发起条件请求
+     * @return true表示已处理
+     */
+    private boolean requestFromBeanCache(AbstractApi api, String tag, String method, String url, Map<String, Object> params, String cacheKey, BeanResponse<?> listener) {
+        BeanCache.Entry entry = BeanCache.getInstance().get(cacheKey);
+        if(entry == null)
+            return false;
+        long age = entry.age();
+        if(!cachePolicy.isUsableWhileRevalidating(age))
+            return false;
+
+        boolean fresh = cachePolicy.isFresh(age);
+        HttpResponse response = new HttpResponse.Builder()
+                .request(new HttpRequest(url, method, null, params, tag))
+                .code(HttpURLConnection.HTTP_OK)
+                .tag(tag)
+                .isCacheResponse(true)
+                //没有原始响应内容，给回调一个空的body而不是null
+                .body(new HttpResponseBody(new byte[0]))
+                .build();
+        response.setIsRevalidating(!fresh);
+        listener.onCachedBean(this, response, entry.bean);
+        if(fresh)
+            return true;
+
+        Request request = newRequestBuilder(tag, method, url, null, params, listener).cacheControl(CachePolicy.CONDITIONAL).build();
+        request(new CallOptions(api, priority, null), request, params, new RevalidateListener(listener));
+        return true;
+    }
+
+    /**
+     * 把合并请求的结果分发给所有订阅者
+     */
+    private static class CoalescedListener extends OnHttpResponseListener<Object> {
+        private final InFlightRequests.Group group;
+
+        CoalescedListener(InFlightRequests.Group group) {
+            this.group = group;
+        }
+
+        @Override
+        public void onFailure(HttpClient httpClient, HttpRequest request, Exception e) {
+            onFailure(InFlightRequests.subscribers(group, true), request, e);
+        }
+
+        @Override
+        public void onNotModified(HttpClient httpClient, HttpRequest request) {
+            for (InFlightRequests.Subscriber s : InFlightRequests.subscribers(group, true)) {
+                s.client.untrack(s.tag);
+                s.client.onResponded();
+                if(s.listener != null)
+                    dispatchNotModified(s.client, s.listener, request);
+            }
+        }
+
+        private void onFailure(List<InFlightRequests.Subscriber> subscribers, HttpRequest request, Exception e) {
+            for (InFlightRequests.Subscriber s : subscribers) {
+                s.client.untrack(s.tag);
+                s.client.onResponded();
+                if(s.listener != null)
+                    dispatchFailure(s.client, s.listener, request, e);
+            }
+        }
+
+        @Override
+        public void onResponse(HttpClient httpClient, HttpResponse response) {
+            List<InFlightRequests.Subscriber> subscribers = InFlightRequests.subscribers(group, !response.isRevalidating());
+            if(subscribers.size() > 1) {
+                //多个订阅者时响应体需要读入内存共享
+                try {
+                    response.body().readBytes();
+                } catch (Exception e) {
+                    //缓存读取失败时继续等待网络结果
+                    if(!response.isRevalidating())
+                        onFailure(subscribers, response.request(), e);
+                    return;
+                }
+            } else if(subscribers.isEmpty()) {
+                response.body().close();
+                return;
+            }
+            for (InFlightRequests.Subscriber s : subscribers) {
+                if(!response.isRevalidating())
+                    s.client.untrack(s.tag);
+                s.client.onResponded();
+                if(s.listener != null)
+                    s.listener.onResponse(s.client, response);
+            }
+        }
     }
 
     public String loadingRequest(AbstractApi api) {
@@ -122,7 +506,7 @@ public class HttpClient {
             mProgressHUD = ProgressHUD.show(context, loadingText, true, true, new DialogInterface.OnCancelListener() {
                 @Override
                 public void onCancel(DialogInterface dialog) {
-                    client.cancel(tag);
+                    cancel(tag);
                 }
             });
         } catch (Exception e) {
@@ -141,7 +525,7 @@ public class HttpClient {
                     continue;
                 encodedParams.append(URLEncoder.encode(entry.getKey(), "UTF-8"));
                 encodedParams.append('=');
-                encodedParams.append(URLEncoder.encode(String.valueOf(entry.getValue()), "UTF-8"));
+                encodedParams.append(URLEncoder.encode(valueToString(entry.getValue()), "UTF-8"));
                 encodedParams.append('&');
             }
             return encodedParams.toString();
@@ -150,13 +534,51 @@ public class HttpClient {
         }
     }
 
+    /**
+     * byte[]类型的参数是已编码好的UTF-8文本，如ApiV2签名后的params
+     */
+    private static String valueToString(Object value) throws UnsupportedEncodingException {
+        if(value instanceof byte[])
+            return new String((byte[]) value, "UTF-8");
+        return String.valueOf(value);
+    }
+
     public void request(final String tag, String method, String url, final HttpHeaders headers, final Map<String, Object> data, final OnHttpResponseListener listener) {
+        request(new CallOptions(client, RequestPriority.USER_VISIBLE), tag, method, url, headers, data, cachePolicy, listener);
+    }
+
+    void request(String tag, String method, String url, HttpHeaders headers, Map<String, Object> data, RequestPriority priority, OnHttpResponseListener<?> listener) {
+        request(new CallOptions(client, priority), tag, method, url, headers, data, cachePolicy, listener);
+    }
+
+    /**
+     * 发送已构建好的请求（如 {@link ChunkedUploader} 的分块），同样经过优先级调度，
+     * 可以被 {@link #cancel(String)} 和 {@link #cancelAll(Object)} 取消
+     * @param request tag必须是唯一的String
+     */
+    void request(Request request, RequestPriority priority, OnHttpResponseListener<?> listener) {
+        request(new CallOptions(client, priority), request, null, listener);
+    }
+
+    private void request(CallOptions options, String tag, String method, String url, HttpHeaders headers, Map<String, Object> data, CachePolicy cachePolicy, OnHttpResponseListener<?> listener) {
+        Request.Builder builder = newRequestBuilder(tag, method, url, headers, data, listener);
+        if(cachePolicy != null) {
+            //先读取缓存，根据缓存时间决定是否还要请求网络
+            Request cacheRequest = builder.cacheControl(CacheControl.FORCE_CACHE).build();
+            request(options, cacheRequest, data, new CacheListener(options, builder, data, cachePolicy, listener));
+        } else {
+            Request request = builder.cacheControl(CacheControl.FORCE_NETWORK).build();
+            request(options, request, data, listener);
+        }
+    }
+
+    private static Request.Builder newRequestBuilder(String tag, String method, String url, HttpHeaders headers, Map<String, Object> data, OnHttpResponseListener<?> listener) {
         Request.Builder builder = new Request.Builder();
 
         if("POST".equals(method))
         {
 
-            builder.post(data2RequestBody(data));
+            builder.post(data2RequestBody(data, listener));
         }else{
             if(data != null && !data.isEmpty()) {
                 url += "?" + mapToQueryString(data);
@@ -171,66 +593,253 @@ public class HttpClient {
             }
         }
 
-        final Request request;
-        if(useCache) {
-            request = builder.tag(tag)
-                    .url(url)
-                    .cacheControl(CacheControl.FORCE_CACHE)
-                    .build();
-            final Request networkRequest = builder.cacheControl(CacheControl.FORCE_NETWORK).build();
-            //读取完缓存结果后，再读取网络
-            request(request, data, new OnHttpResponseListener() {
-                @Override
-                public void onFailure(HttpClient httpClient, HttpRequest r, Exception e) {
-                    if(debug) {
-                        L.e(e);
-                    }
+        return builder.tag(tag).url(url);
+    }
 
-                    request(networkRequest, data, listener);
-                }
+    private class CacheListener extends OnHttpResponseListener<Object> {
+        private final CallOptions options;
+        private final Request.Builder builder;
+        private final Map<String, Object> data;
+        private final CachePolicy policy;
+        private final OnHttpResponseListener<?> listener;
+
+        CacheListener(CallOptions options, Request.Builder builder, Map<String, Object> data, CachePolicy policy, OnHttpResponseListener<?> listener) {
+            this.options = options;
+            this.builder = builder;
+            this.data = data;
+            this.policy = policy;
+            this.listener = listener;
+        }
 
-                @Override
-                public void onResponse(HttpClient httpClient, HttpResponse response) {
-                    if(response.isSuccessful()){
-                        if(listener != null){
-                            response.setIsCacheResponse(true);
-                            listener.onResponse(httpClient, response);
-                        }
-                    }
-                    request(networkRequest, data, listener);
-                }
-            });
-        } else {
-            request = builder.tag(tag)
-                    .url(url)
-                    .cacheControl(CacheControl.FORCE_NETWORK)
-                    .build();
-            request(request, data, listener);
+        @Override
+        public void onFailure(HttpClient httpClient, HttpRequest r, Exception e) {
+            //没有缓存
+            request(options, builder.cacheControl(CacheControl.FORCE_NETWORK).build(), data, listener);
+        }
+
+        @Override
+        public void onResponse(HttpClient httpClient, HttpResponse response) {
+            long age = CachePolicy.ageOf(response);
+            if(!response.isSuccessful() || !policy.isUsableWhileRevalidating(age)) {
+                response.body().close();
+                request(options, builder.cacheControl(CacheControl.FORCE_NETWORK).build(), data, listener);
+                return;
+            }
+
+            boolean fresh = policy.isFresh(age);
+            response.setIsCacheResponse(true);
+            response.setIsRevalidating(!fresh);
+            if(listener != null) {
+                listener.onResponse(httpClient, response);
+            } else {
+                response.body().close();
+            }
+            if(fresh)
+                return;
+
+            //条件请求，未修改时服务器返回304，不用重复下载和解析
+            request(options, builder.cacheControl(CachePolicy.CONDITIONAL).build(), data, new RevalidateListener(listener));
+        }
+    }
+
+    private static class RevalidateListener extends OnHttpResponseListener<Object> {
+        private final OnHttpResponseListener<?> listener;
+
+        RevalidateListener(OnHttpResponseListener<?> listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onFailure(HttpClient httpClient, HttpRequest request, Exception e) {
+            if(listener != null)
+                dispatchFailure(httpClient, listener, request, e);
+        }
+
+        @Override
+        public void onResponse(HttpClient httpClient, HttpResponse response) {
+            //okhttp验证缓存时304被合并为缓存中的响应
+            if(!response.isNotModified() && response.code() != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                if(listener != null)
+                    listener.onResponse(httpClient, response);
+                return;
+            }
+            response.body().close();
+            if(listener != null)
+                dispatchNotModified(httpClient, listener, response.request());
         }
     }
 
-    private void request(Request request, final Map<String, Object> data, final OnHttpResponseListener listener) {
+    private void request(CallOptions options, Request request, Map<String, Object> data, OnHttpResponseListener<?> listener) {
+        request(options, request, data, listener, 0);
+    }
+
+    private void request(final CallOptions options, final Request request, final Map<String, Object> data, final OnHttpResponseListener<?> listener, final int attempt) {
         final String tag = (String)request.tag();
+        final boolean onlyIfCached = request.cacheControl().onlyIfCached();
 
-        if(request.cacheControl() != CacheControl.FORCE_CACHE) {
-            L.d("BeanRequest", "URL=" + request.urlString() + " POST=" + data);
+        if(!onlyIfCached) {
+            if(L.debug)
+                L.d("BeanRequest", "URL=" + request.urlString() + " POST=" + HttpRequest.readableParams(data) + (attempt > 0 ? " retry=" + attempt : ""));
+            if(attempt == 0)
+                RetryPolicy.depositBudget();
         }
 
-        client.newCall(request).enqueue(new Callback() {
+        //重试时不再登记：合并请求的发起者可能已经取消，重新登记后cancelAll会取消其它订阅者的请求
+        if(attempt == 0)
+            track(tag);
+        //只统计真正发到网络的第一个请求
+        final long firstRequestStart = !onlyIfCached && attempt == 0 && ConnectionPrewarmer.claimFirstRequest(tag)
+                ? SystemClock.uptimeMillis() : -1;
+        final RequestMetrics metrics = onlyIfCached || !config.metricsEnabled ? null
+                : HttpMetrics.getInstance().start(options.name, request, attempt);
+        dispatcher.enqueue(options.client, request, new Callback() {
             @Override
             public void onFailure(Request request, IOException e) {
+                if(consumeCanceled(tag)) {
+                    if(metrics != null)
+                        HttpMetrics.getInstance().discard(request);
+                    onResponded();
+                    return;
+                }
+                if(firstRequestStart >= 0) {
+                    ConnectionPrewarmer.recordFirstRequest(context, SystemClock.uptimeMillis() - firstRequestStart, true);
+                }
+                if(metrics != null) {
+                    HttpMetrics.getInstance().discard(request);
+                    metrics.fail(e);
+                }
+                if(!onlyIfCached && scheduleRetry(options, request, data, listener, attempt, -1))
+                    return;
+                if(!onlyIfCached && options.offline != null && !(e instanceof CanceledException)) {
+                    OfflineQueue.getInstance().enqueue(options.offline);
+                    e = new OfflineQueuedException(e);
+                }
+                untrack(tag);
                 onResponded();
                 HttpRequest hr = new HttpRequest(request, data, tag);
-                listener.onFailure(HttpClient.this, hr, e);
+                dispatchFailure(HttpClient.this, listener, hr, e);
             }
 
             @Override
             public void onResponse(Response response) throws IOException {
+                if(consumeCanceled(tag)) {
+                    //取消前已经收到响应
+                    response.body().close();
+                    onResponded();
+                    return;
+                }
+                if(firstRequestStart >= 0) {
+                    ConnectionPrewarmer.recordFirstRequest(context, SystemClock.uptimeMillis() - firstRequestStart, false);
+                }
+                if(!onlyIfCached && RetryPolicy.isRetryableCode(response.code())) {
+                    long retryAfter = options.retryPolicy == null ? -1 : options.retryPolicy.retryAfterMillis(response.header("Retry-After"));
+                    if(scheduleRetry(options, request, data, listener, attempt, retryAfter)) {
+                        response.body().close();
+                        if(metrics != null)
+                            metrics.finish();
+                        return;
+                    }
+                }
+                untrack(tag);
                 onResponded();
-                HttpResponse.Builder b = new HttpResponse.Builder(response, data, tag);
-                listener.onResponse(HttpClient.this, b.build());
+                HttpResponse httpResponse = new HttpResponse(response, data, tag);
+                if(metrics == null) {
+                    if(listener != null)
+                        listener.onResponse(HttpClient.this, httpResponse);
+                    //没有读取响应的监听者（如只检查code）不能占用连接
+                    httpResponse.body().closeUnlessRetained();
+                    return;
+                }
+                metrics.body = httpResponse.body();
+                httpResponse.setMetrics(metrics);
+                long start = SystemClock.uptimeMillis();
+                if(listener != null)
+                    listener.onResponse(HttpClient.this, httpResponse);
+                httpResponse.body().closeUnlessRetained();
+                //BeanResponse接管后在主线程回调结束时统计
+                if(!metrics.isClaimed()) {
+                    metrics.deliveryMillis = SystemClock.uptimeMillis() - start;
+                    metrics.finish();
+                }
+            }
+        }, options.priority);
+    }
+
+    /**
+     * 按重试策略延迟重发请求
+     * @param retryAfter 服务器要求的等待时间，-1表示使用退避时间
+     * @return false表示不重试
+     */
+    private boolean scheduleRetry(final CallOptions options, final Request request, final Map<String, Object> data,
+                                  final OnHttpResponseListener<?> listener, final int attempt, long retryAfter) {
+        RetryPolicy policy = options.retryPolicy;
+        final String tag = (String) request.tag();
+        if(policy == null || retryAfter == Long.MAX_VALUE || !policy.canRetry(request.method(), attempt) || !isWanted(tag, listener))
+            return false;
+        if(!RetryPolicy.withdrawBudget()) {
+            L.d("BeanRequest", "Retry budget exhausted, URL=" + request.urlString());
+            return false;
+        }
+        long delay = retryAfter >= 0 ? retryAfter : policy.backoffMillis(attempt);
+        retryHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if(!isWanted(tag, listener)) {
+                    //退避期间被取消，cancelAll取消的不再回调
+                    if(!consumeCanceled(tag))
+                        dispatchFailure(HttpClient.this, listener, new HttpRequest(request, data, tag), new CanceledException());
+                    return;
+                }
+                request(options, request, data, listener, attempt + 1);
             }
-        });
+        }, delay);
+        return true;
+    }
+
+    /**
+     * 是否还有人等待请求结果。合并的请求由第一个订阅者的tag发出，它取消后其它订阅者仍在等待，
+     * 需要看请求组是否还有订阅者
+     */
+    private boolean isWanted(String tag, OnHttpResponseListener<?> listener) {
+        if(listener instanceof RevalidateListener)
+            listener = ((RevalidateListener) listener).listener;
+        if(listener instanceof CoalescedListener)
+            return InFlightRequests.hasSubscribers(((CoalescedListener) listener).group);
+        return isTracked(tag);
+    }
+
+    private static void dispatchNotModified(final HttpClient httpClient, final OnHttpResponseListener<?> listener, final HttpRequest request) {
+        if(listener == null)
+            return;
+        if(listener instanceof BeanResponse) {
+            //服务器确认内存中的结果仍然有效，重新开始计算缓存时间
+            ((BeanResponse<?>) listener).refreshBeanCache();
+            DecodeScheduler.getInstance().post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onNotModified(httpClient, request);
+                }
+            });
+        } else {
+            listener.onNotModified(httpClient, request);
+        }
+    }
+
+    static void dispatchFailure(final HttpClient httpClient, final OnHttpResponseListener<?> listener, final HttpRequest request, final Exception e) {
+        //request(api)没有监听者
+        if(listener == null)
+            return;
+        if(listener instanceof BeanResponse) {
+            //BeanResponse的回调都在主线程
+            DecodeScheduler.getInstance().post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onFailure(httpClient, request, e);
+                }
+            });
+        } else {
+            listener.onFailure(httpClient, request, e);
+        }
     }
 
     private void onResponded() {
@@ -245,21 +854,26 @@ public class HttpClient {
         }
     }
 
-    private static RequestBody data2RequestBody(Map<String, Object> data) {
+    /**
+     * 文件直接从磁盘流式上传；含已压缩的媒体文件时不再gzip，监听者实现了 {@link UploadProgressListener} 时回调进度
+     */
+    private static RequestBody data2RequestBody(Map<String, Object> data, OnHttpResponseListener<?> listener) {
         if(data == null || data.isEmpty())
             return null;
 
         MultipartBuilder mb = new MultipartBuilder();
         String key;
         Object value;
+        boolean hasFile = false;
+        boolean compressible = true;
 
         for(Map.Entry<String, Object> entry : data.entrySet()) {
             key = entry.getKey();
             value = entry.getValue();
 
             if(value instanceof File) {
-                File file = (File) value;
-                mb.addFormDataPart(key, file.getName(), RequestBody.create(MediaType.parse(getMimeType(file.getName())), file));
+                hasFile = true;
+                compressible &= addFilePart(mb, key, (File) value);
 
             } else if(value instanceof Iterable) {
                 Iterator iter = ((Iterable) value).iterator();
@@ -269,18 +883,34 @@ public class HttpClient {
                     item = iter.next();
 
                     if(item instanceof File) {
-                        File file = (File) item;
-                        mb.addFormDataPart(key, file.getName(), RequestBody.create(MediaType.parse(getMimeType(file.getName())), file));
+                        hasFile = true;
+                        compressible &= addFilePart(mb, key, (File) item);
                     } else {
-                        mb.addFormDataPart(key, String.valueOf(value));
+                        mb.addFormDataPart(key, String.valueOf(item));
                     }
                 }
 
+            } else if(value instanceof byte[]) {
+                mb.addPart(Headers.of("Content-Disposition", "form-data; name=\"" + key + "\""),
+                        RequestBody.create(null, (byte[]) value));
             } else {
                 mb.addFormDataPart(key, String.valueOf(value));
             }
         }
-        return mb.build();
+        RequestBody body = mb.build();
+        if(!hasFile)
+            return body;
+        UploadProgressListener progressListener = listener instanceof UploadProgressListener ? (UploadProgressListener) listener : null;
+        return new ProgressRequestBody(body, progressListener, compressible);
+    }
+
+    /**
+     * @return 文件内容是否值得压缩
+     */
+    private static boolean addFilePart(MultipartBuilder mb, String key, File file) {
+        MediaType mediaType = MediaType.parse(getMimeType(file.getName()));
+        mb.addFormDataPart(key, file.getName(), RequestBody.create(mediaType, file));
+        return GzipRequestInterceptor.isCompressible(mediaType);
     }
 
     public static String getMimeType(String url) {
@@ -289,7 +919,8 @@ public class HttpClient {
         if (extension != null) {
             type = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
         }
-        if(TextUtils.isEmpty(type)) {
+        //MimeTypeMap对未知的扩展名返回null
+        if(type == null) {
             type = "application/octet-stream";
         }
 
@@ -0,0 +1,168 @@
+package com.jecelyin.android.common.http;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * {@link HttpClient} 的网络配置，需要在第一次调用 {@link HttpClient#newInstance} 之前通过
+ * {@link HttpClient#setConfig(HttpClientConfig)} 设置，一般在 Application.onCreate() 中设置。
+ * {@link com.jecelyin.android.common.app.JecApp} 的离线队列和连接预热在onCreate返回后才创建客户端，
+ * 在 super.onCreate() 之后设置也会生效。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public final class HttpClientConfig {
+    final int maxIdleConnections;
+    final long keepAliveDurationMs;
+    final int maxRequests;
+    final int maxRequestsPerHost;
+    final int maxDeferredRequests;
+    final long cacheSize;
+    final File cacheDirectory;
+    final long connectTimeoutMs;
+    final long readTimeoutMs;
+    final long writeTimeoutMs;
+    final long gzipMinSize;
+    final long gzipBufferLimit;
+    final int gzipLevel;
+    final boolean metricsEnabled;
+
+    private HttpClientConfig(Builder builder) {
+        this.maxIdleConnections = builder.maxIdleConnections;
+        this.keepAliveDurationMs = builder.keepAliveDurationMs;
+        this.maxRequests = builder.maxRequests;
+        this.maxRequestsPerHost = builder.maxRequestsPerHost;
+        this.maxDeferredRequests = builder.maxDeferredRequests;
+        this.cacheSize = builder.cacheSize;
+        this.cacheDirectory = builder.cacheDirectory;
+        this.connectTimeoutMs = builder.connectTimeoutMs;
+        this.readTimeoutMs = builder.readTimeoutMs;
+        this.writeTimeoutMs = builder.writeTimeoutMs;
+        this.gzipMinSize = builder.gzipMinSize;
+        this.gzipBufferLimit = builder.gzipBufferLimit;
+        this.gzipLevel = builder.gzipLevel;
+        this.metricsEnabled = builder.metricsEnabled;
+    }
+
+    public Builder newBuilder() {
+        return new Builder(this);
+    }
+
+    public static final class Builder {
+        private int maxIdleConnections = 5;
+        private long keepAliveDurationMs = TimeUnit.MINUTES.toMillis(5);
+        private int maxRequests = 64;
+        private int maxRequestsPerHost = 5;
+        private int maxDeferredRequests = 2;
+        private long cacheSize = 10 * 1024 * 1024; // 10 MiB
+        private File cacheDirectory;
+        private long connectTimeoutMs = TimeUnit.SECONDS.toMillis(30);
+        private long readTimeoutMs = TimeUnit.SECONDS.toMillis(60);
+        private long writeTimeoutMs = TimeUnit.SECONDS.toMillis(60);
+        private long gzipMinSize = GzipRequestInterceptor.DEFAULT_MIN_SIZE;
+        private long gzipBufferLimit = GzipRequestInterceptor.DEFAULT_BUFFER_LIMIT;
+        private int gzipLevel = Deflater.DEFAULT_COMPRESSION;
+        private boolean metricsEnabled = false;
+
+        public Builder() {
+        }
+
+        private Builder(HttpClientConfig config) {
+            this.maxIdleConnections = config.maxIdleConnections;
+            this.keepAliveDurationMs = config.keepAliveDurationMs;
+            this.maxRequests = config.maxRequests;
+            this.maxRequestsPerHost = config.maxRequestsPerHost;
+            this.maxDeferredRequests = config.maxDeferredRequests;
+            this.cacheSize = config.cacheSize;
+            this.cacheDirectory = config.cacheDirectory;
+            this.connectTimeoutMs = config.connectTimeoutMs;
+            this.readTimeoutMs = config.readTimeoutMs;
+            this.writeTimeoutMs = config.writeTimeoutMs;
+            this.gzipMinSize = config.gzipMinSize;
+            this.gzipBufferLimit = config.gzipBufferLimit;
+            this.gzipLevel = config.gzipLevel;
+            this.metricsEnabled = config.metricsEnabled;
+        }
+
+        /** 连接池中保留的最大空闲连接数 */
+        public Builder connectionPool(int maxIdleConnections, long keepAliveDuration, TimeUnit unit) {
+            if (maxIdleConnections < 0) throw new IllegalArgumentException("maxIdleConnections < 0: " + maxIdleConnections);
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAliveDurationMs = unit.toMillis(keepAliveDuration);
+            return this;
+        }
+
+        public Builder maxRequests(int maxRequests) {
+            if (maxRequests < 1) throw new IllegalArgumentException("maxRequests < 1: " + maxRequests);
+            this.maxRequests = maxRequests;
+            return this;
+        }
+
+        public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+            if (maxRequestsPerHost < 1) throw new IllegalArgumentException("maxRequestsPerHost < 1: " + maxRequestsPerHost);
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /**
+         * 没有用户等待的请求进行时，同时发出的预加载和后台请求数，见 {@link RequestPriority}
+         */
+        public Builder maxDeferredRequests(int maxDeferredRequests) {
+            if (maxDeferredRequests < 1) throw new IllegalArgumentException("maxDeferredRequests < 1: " + maxDeferredRequests);
+            this.maxDeferredRequests = maxDeferredRequests;
+            return this;
+        }
+
+        /**
+         * @param directory null表示使用 Context.getCacheDir()/http
+         * @param size 0表示不使用磁盘缓存
+         */
+        public Builder cache(File directory, long size) {
+            if (size < 0) throw new IllegalArgumentException("size < 0: " + size);
+            this.cacheDirectory = directory;
+            this.cacheSize = size;
+            return this;
+        }
+
+        public Builder connectTimeout(long timeout, TimeUnit unit) {
+            this.connectTimeoutMs = unit.toMillis(timeout);
+            return this;
+        }
+
+        public Builder readTimeout(long timeout, TimeUnit unit) {
+            this.readTimeoutMs = unit.toMillis(timeout);
+            return this;
+        }
+
+        public Builder writeTimeout(long timeout, TimeUnit unit) {
+            this.writeTimeoutMs = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * 请求体压缩设置，见 {@link GzipRequestInterceptor}
+         * @param level {@link Deflater#BEST_SPEED} 到 {@link Deflater#BEST_COMPRESSION}
+         */
+        public Builder requestCompression(long minSize, long bufferLimit, int level) {
+            if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION))
+                throw new IllegalArgumentException("Invalid compression level: " + level);
+            this.gzipMinSize = minSize;
+            this.gzipBufferLimit = bufferLimit;
+            this.gzipLevel = level;
+            return this;
+        }
+
+        /**
+         * 是否统计请求耗时，见 {@link HttpMetrics}，默认关闭。开启后会替换okhttp的Dns和SocketFactory
+         */
+        public Builder metrics(boolean enabled) {
+            this.metricsEnabled = enabled;
+            return this;
+        }
+
+        public HttpClientConfig build() {
+            return new HttpClientConfig(this);
+        }
+    }
+}
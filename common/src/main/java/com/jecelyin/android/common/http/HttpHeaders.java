@@ -43,27 +43,61 @@ import java.util.TreeSet;
  * leading or trailing whitespace.
  *
  * <p>Instances of this class are immutable. Use {@link Builder} to create
- * instances.
+ * instances, or {@link #of(Headers)} to wrap the headers of an okhttp message
+ * without copying them.
+ *
+ * <p>Lookups scan the fields linearly. Messages with more than {@value
+ * #INDEX_THRESHOLD} fields, such as responses carrying a long list of
+ * {@code Set-Cookie} lines, build a case-insensitive hash index on the first
+ * lookup instead.
  */
 public final class HttpHeaders {
+  private static final int INDEX_THRESHOLD = 8;
+
   private final String[] namesAndValues;
+  private final Headers headers;
+  private volatile Index index;
 
   private HttpHeaders(Builder builder) {
     this.namesAndValues = builder.namesAndValues.toArray(new String[builder.namesAndValues.size()]);
+    this.headers = null;
+  }
+
+  private HttpHeaders(Headers headers) {
+    this.namesAndValues = null;
+    this.headers = headers;
+  }
+
+  /** Returns a view of {@code headers}; the fields are not copied. */
+  public static HttpHeaders of(Headers headers) {
+    return new HttpHeaders(headers);
   }
 
   /** Returns the last value corresponding to the specified field, or null. */
   public String get(String name) {
-    return get(namesAndValues, name);
+    int size = size();
+    if (size > INDEX_THRESHOLD) {
+      int i = index().last(this, name);
+      return i < 0 ? null : value(i);
+    }
+    for (int i = size - 1; i >= 0; i--) {
+      if (nameEquals(name(i), name)) {
+        return value(i);
+      }
+    }
+    return null;
   }
 
   /** Returns the number of field values. */
   public int size() {
-    return namesAndValues.length / 2;
+    return headers != null ? headers.size() : namesAndValues.length / 2;
   }
 
   /** Returns the field at {@code position} or null if that is out of range. */
   public String name(int index) {
+    if (headers != null) {
+      return index < 0 || index >= headers.size() ? null : headers.name(index);
+    }
     int nameIndex = index * 2;
     if (nameIndex < 0 || nameIndex >= namesAndValues.length) {
       return null;
@@ -73,6 +107,9 @@ public final class HttpHeaders {
 
   /** Returns the value at {@code index} or null if that is out of range. */
   public String value(int index) {
+    if (headers != null) {
+      return index < 0 || index >= headers.size() ? null : headers.value(index);
+    }
     int valueIndex = index * 2 + 1;
     if (valueIndex < 0 || valueIndex >= namesAndValues.length) {
       return null;
@@ -92,11 +129,21 @@ public final class HttpHeaders {
   /** Returns an immutable list of the header values for {@code name}. like: Set-Cookie: */
   public List<String> values(String name) {
     List<String> result = null;
-    for (int i = 0, size = size(); i < size; i++) {
-      if (name.equalsIgnoreCase(name(i))) {
-        if (result == null) result = new ArrayList<>(2);
+    int size = size();
+    if (size > INDEX_THRESHOLD) {
+      Index index = index();
+      for (int i = index.last(this, name); i >= 0; i = index.previous[i]) {
+        if (result == null) result = new ArrayList<>(4);
         result.add(value(i));
       }
+      if (result != null) Collections.reverse(result);
+    } else {
+      for (int i = 0; i < size; i++) {
+        if (nameEquals(name(i), name)) {
+          if (result == null) result = new ArrayList<>(2);
+          result.add(value(i));
+        }
+      }
     }
     return result != null
         ? Collections.unmodifiableList(result)
@@ -125,13 +172,80 @@ public final class HttpHeaders {
     return result;
   }
 
-  private static String get(String[] namesAndValues, String name) {
-    for (int i = namesAndValues.length - 2; i >= 0; i -= 2) {
-      if (name.equalsIgnoreCase(namesAndValues[i])) {
-        return namesAndValues[i + 1];
+  private static boolean nameEquals(String a, String b) {
+    return a == b || a.equalsIgnoreCase(b);
+  }
+
+  /**
+   * Hashes {@code name} with ASCII letters folded to lower case, like
+   * {@code name.toLowerCase(Locale.US).hashCode()} without the copy, then
+   * mixes the high bits into the low bits ({@code h ^ (h >>> 16)}) because
+   * the index only keeps the low bits of the hash.
+   */
+  private static int hashIgnoreCase(String name) {
+    int h = 0;
+    for (int i = 0, length = name.length(); i < length; i++) {
+      char c = name.charAt(i);
+      if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+      h = 31 * h + c;
+    }
+    return h ^ (h >>> 16);
+  }
+
+  private Index index() {
+    Index result = index;
+    if (result == null) {
+      result = new Index(this);
+      index = result;
+    }
+    return result;
+  }
+
+  /**
+   * Open addressing table from a field name to the position of its last
+   * occurrence; earlier occurrences are chained through {@code previous}.
+   */
+  private static final class Index {
+    final int[] slots;
+    final int[] previous;
+
+    Index(HttpHeaders headers) {
+      int size = headers.size();
+      int capacity = Integer.highestOneBit(size * 2 - 1) << 1;
+      slots = new int[capacity];
+      previous = new int[size];
+      int mask = capacity - 1;
+      for (int i = 0; i < size; i++) {
+        String name = headers.name(i);
+        int slot = hashIgnoreCase(name) & mask;
+        while (true) {
+          int position = slots[slot] - 1;
+          if (position < 0) {
+            previous[i] = -1;
+            slots[slot] = i + 1;
+            break;
+          }
+          if (nameEquals(headers.name(position), name)) {
+            previous[i] = position;
+            slots[slot] = i + 1;
+            break;
+          }
+          slot = (slot + 1) & mask;
+        }
+      }
+    }
+
+    /** Returns the position of the last field named {@code name}, or -1. */
+    int last(HttpHeaders headers, String name) {
+      int mask = slots.length - 1;
+      int slot = hashIgnoreCase(name) & mask;
+      while (true) {
+        int position = slots[slot] - 1;
+        if (position < 0) return -1;
+        if (nameEquals(headers.name(position), name)) return position;
+        slot = (slot + 1) & mask;
       }
     }
-    return null;
   }
 
   public static final class Builder {
@@ -165,7 +279,7 @@ public final class HttpHeaders {
 
     public Builder removeAll(String name) {
       for (int i = 0; i < namesAndValues.size(); i += 2) {
-        if (name.equalsIgnoreCase(namesAndValues.get(i))) {
+        if (nameEquals(namesAndValues.get(i), name)) {
           namesAndValues.remove(i); // name
           namesAndValues.remove(i); // value
           i -= 2;
@@ -208,7 +322,7 @@ public final class HttpHeaders {
     /** Equivalent to {@code build().get(name)}, but potentially faster. */
     public String get(String name) {
       for (int i = namesAndValues.size() - 2; i >= 0; i -= 2) {
-        if (name.equalsIgnoreCase(namesAndValues.get(i))) {
+        if (nameEquals(namesAndValues.get(i), name)) {
           return namesAndValues.get(i + 1);
         }
       }
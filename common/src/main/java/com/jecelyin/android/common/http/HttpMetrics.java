@@ -0,0 +1,363 @@
+package com.jecelyin.android.common.http;
+
+import android.os.SystemClock;
+
+import com.alibaba.fastjson.JSONObject;
+import com.squareup.okhttp.Dns;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.net.SocketFactory;
+
+/**
+ * 网络请求耗时统计：按Api分别记录DNS、TCP连接、TLS握手、首字节、下载、解析和主线程回调的耗时分布，
+ * 可以通过 {@link #export()} 导出上报，找出线上真实的长尾延迟。
+ * 需要逐个请求的数据时通过 {@link #addListener(Listener)} 监听。
+ * okhttp 2.x 没有事件监听接口，DNS和连接时间通过包装 {@link Dns} 和 {@link SocketFactory} 得到。
+ * 默认不统计，需要通过 {@link HttpClientConfig.Builder#metrics(boolean)} 开启。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public class HttpMetrics {
+    public enum Phase {
+        DNS, CONNECT, TLS, TTFB, DOWNLOAD, DECODE_WAIT, DECODE, DELIVERY, TOTAL
+    }
+
+    public interface Listener {
+        /**
+         * 请求结束时调用，BeanResponse的请求在主线程，其它请求在网络线程
+         */
+        void onRequestMetrics(RequestMetrics metrics);
+    }
+
+    /** 最多分别统计的名称数，之后新的名称都计入 {@link #OTHER}，避免没有Api名的请求按URL无限增长 */
+    static final int MAX_NAMES = 200;
+    static final String OTHER = "(other)";
+    /** 路径中的id段统一替换为这个值 */
+    private static final String ID_SEGMENT = "{id}";
+
+    private static HttpMetrics instance;
+
+    /** 当前网络线程正在执行的请求 */
+    private static final ThreadLocal<RequestMetrics> current = new ThreadLocal<>();
+
+    /** 等待执行的请求，弱引用键：请求没有执行就被丢弃时（如重试前被取消）也不会一直留在这里 */
+    private final Map<Request, RequestMetrics> pending = Collections.synchronizedMap(new WeakHashMap<Request, RequestMetrics>());
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean enabled = true;
+
+    public synchronized static HttpMetrics getInstance() {
+        if(instance == null) {
+            instance = new HttpMetrics();
+        }
+        return instance;
+    }
+
+    public synchronized static void setInstance(HttpMetrics metrics) {
+        instance = metrics;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 一个Api的统计结果
+     */
+    public static final class Stats {
+        private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+        private int errorCount;
+
+        Stats() {
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+        }
+
+        public LatencyHistogram get(Phase phase) {
+            return histograms[phase.ordinal()];
+        }
+
+        public synchronized int getErrorCount() {
+            return errorCount;
+        }
+
+        synchronized void incrementErrorCount() {
+            errorCount++;
+        }
+
+        public JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("errors", getErrorCount());
+            for (Phase phase : Phase.values()) {
+                LatencyHistogram histogram = get(phase);
+                if(histogram.getCount() > 0)
+                    json.put(phase.name().toLowerCase(), histogram.toJSON());
+            }
+            return json;
+        }
+    }
+
+    /**
+     * @param name Api类名，null时使用URL的路径，路径中的id段替换为 {id}
+     * @return 没有开启统计时返回null
+     */
+    RequestMetrics start(String name, Request request, int attempt) {
+        if(!enabled)
+            return null;
+        if(name == null)
+            name = normalizePath(request.httpUrl().encodedPath());
+        RequestMetrics metrics = new RequestMetrics(this, name, request.urlString(), request.method(), attempt);
+        pending.put(request, metrics);
+        return metrics;
+    }
+
+    /**
+     * 请求没有执行就结束时（如被取消）清理
+     */
+    void discard(Request request) {
+        pending.remove(request);
+    }
+
+    void record(RequestMetrics metrics) {
+        Stats s = getStats(metrics.getName());
+        if(metrics.getError() != null)
+            s.incrementErrorCount();
+        recordPhase(s, Phase.DNS, metrics.dnsMillis);
+        recordPhase(s, Phase.CONNECT, metrics.connectMillis);
+        recordPhase(s, Phase.TLS, metrics.tlsMillis);
+        recordPhase(s, Phase.TTFB, metrics.ttfbMillis);
+        recordPhase(s, Phase.DOWNLOAD, metrics.downloadMillis);
+        recordPhase(s, Phase.DECODE_WAIT, metrics.decodeWaitMillis);
+        recordPhase(s, Phase.DECODE, metrics.decodeMillis);
+        recordPhase(s, Phase.DELIVERY, metrics.deliveryMillis);
+        if(metrics.getError() == null)
+            recordPhase(s, Phase.TOTAL, metrics.totalMillis);
+
+        for (Listener listener : listeners) {
+            listener.onRequestMetrics(metrics);
+        }
+    }
+
+    private static void recordPhase(Stats s, Phase phase, long millis) {
+        if(millis >= 0)
+            s.get(phase).record(millis);
+    }
+
+    private Stats getStats(String name) {
+        Stats s = stats.get(name);
+        if(s == null) {
+            synchronized (stats) {
+                s = stats.get(name);
+                if(s == null) {
+                    if(stats.size() >= MAX_NAMES && !OTHER.equals(name))
+                        return getStats(OTHER);
+                    s = new Stats();
+                    stats.put(name, s);
+                }
+            }
+        }
+        return s;
+    }
+
+    /**
+     * 把 /user/123/posts 这样的路径归为 /user/{id}/posts，同一个接口只占一个统计项
+     */
+    static String normalizePath(String path) {
+        StringBuilder sb = new StringBuilder(path.length());
+        int start = 0;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if(end < 0)
+                end = path.length();
+            if(start > 0)
+                sb.append('/');
+            String segment = path.substring(start, end);
+            sb.append(isIdSegment(segment) ? ID_SEGMENT : segment);
+            start = end + 1;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 纯数字，或者16位以上且包含数字（如UUID、哈希、token）
+     */
+    private static boolean isIdSegment(String segment) {
+        if(segment.isEmpty())
+            return false;
+        boolean allDigits = true;
+        boolean hasDigit = false;
+        for (int i = 0; i < segment.length(); i++) {
+            if(Character.isDigit(segment.charAt(i)))
+                hasDigit = true;
+            else
+                allDigits = false;
+        }
+        return allDigits || (hasDigit && segment.length() >= 16);
+    }
+
+    /**
+     * @return 没有记录时返回null
+     */
+    public Stats getStats(Class<?> apiClass) {
+        return stats.get(apiClass.getSimpleName());
+    }
+
+    /**
+     * 导出所有Api的统计，格式为 {"Api名": {"errors": 0, "ttfb": {"count", "mean", "p50", "p90", "p99", "max"}, ...}}
+     */
+    public JSONObject export() {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, Stats> entry : new TreeMap<>(stats).entrySet()) {
+            json.put(entry.getKey(), entry.getValue().toJSON());
+        }
+        return json;
+    }
+
+    public void reset() {
+        stats.clear();
+    }
+
+    /**
+     * 在okhttp客户端上安装统计钩子，由 {@link HttpClient} 创建客户端时调用
+     */
+    void install(OkHttpClient client) {
+        client.interceptors().add(0, new CallInterceptor());
+        client.networkInterceptors().add(new NetworkInterceptor());
+        client.setDns(new MetricsDns());
+        client.setSocketFactory(new MetricsSocketFactory(SocketFactory.getDefault()));
+    }
+
+    /**
+     * 应用拦截器，标记当前线程正在执行的请求，需要排在其它会修改请求的拦截器前面
+     */
+    private class CallInterceptor implements Interceptor {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            RequestMetrics metrics = pending.remove(chain.request());
+            if(metrics == null)
+                return chain.proceed(chain.request());
+            metrics.callStartTime = SystemClock.uptimeMillis();
+            current.set(metrics);
+            try {
+                return chain.proceed(chain.request());
+            } finally {
+                current.remove();
+            }
+        }
+    }
+
+    /**
+     * 网络拦截器，此时连接已经建立
+     */
+    private static class NetworkInterceptor implements Interceptor {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            RequestMetrics metrics = current.get();
+            if(metrics == null)
+                return chain.proceed(chain.request());
+
+            long sendTime = SystemClock.uptimeMillis();
+            if(metrics.newConnection && chain.connection() != null && chain.connection().getHandshake() != null) {
+                long connectTime = sendTime - metrics.callStartTime;
+                metrics.tlsMillis = Math.max(0, connectTime - Math.max(0, metrics.dnsMillis) - Math.max(0, metrics.connectMillis));
+            }
+            Response response = chain.proceed(chain.request());
+            metrics.ttfbMillis = SystemClock.uptimeMillis() - sendTime;
+            metrics.code = response.code();
+            return response;
+        }
+    }
+
+    private static class MetricsDns implements Dns {
+        @Override
+        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+            long start = SystemClock.uptimeMillis();
+            try {
+                return Dns.SYSTEM.lookup(hostname);
+            } finally {
+                RequestMetrics metrics = current.get();
+                if(metrics != null)
+                    metrics.dnsMillis = Math.max(0, metrics.dnsMillis) + SystemClock.uptimeMillis() - start;
+            }
+        }
+    }
+
+    /**
+     * okhttp通过无参的 {@link #createSocket()} 创建socket后再连接
+     */
+    private static class MetricsSocketFactory extends SocketFactory {
+        private final SocketFactory delegate;
+
+        MetricsSocketFactory(SocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return new Socket() {
+                @Override
+                public void connect(SocketAddress remoteAddr, int timeout) throws IOException {
+                    long start = SystemClock.uptimeMillis();
+                    try {
+                        super.connect(remoteAddr, timeout);
+                    } finally {
+                        RequestMetrics metrics = current.get();
+                        if(metrics != null) {
+                            metrics.newConnection = true;
+                            metrics.connectMillis = Math.max(0, metrics.connectMillis) + SystemClock.uptimeMillis() - start;
+                        }
+                    }
+                }
+            };
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return delegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return delegate.createSocket(host, port, localHost, localPort);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return delegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return delegate.createSocket(address, port, localAddress, localPort);
+        }
+    }
+}
@@ -2,12 +2,16 @@ package com.jecelyin.android.common.http;
 
 import com.squareup.okhttp.Request;
 
+import java.nio.charset.Charset;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
  * @author Jecelyin <jecelyin@gmail.com>
  */
 public final class HttpRequest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     public final String url;
     public final String method;
     public final HttpHeaders headers;
@@ -18,15 +22,33 @@ public final class HttpRequest {
         this.url = url;
         this.method = method;
         this.headers = headers;
-        this.body = body;
+        this.body = readableParams(body);
         this.tag = tag;
     }
 
     HttpRequest(Request request, Map<String, Object> data, String tag) {
         this.url = request.urlString();
         this.method = request.method();
-        this.headers = new HttpHeaders.Builder(request.headers()).build();
-        this.body = data;
+        this.headers = HttpHeaders.of(request.headers());
+        this.body = readableParams(data);
         this.tag = tag;
     }
+
+    /**
+     * byte[]类型的参数（如ApiV2签名后的params）是UTF-8文本，转换为String后用于日志和回调，
+     * 没有byte[]参数时返回原Map
+     */
+    static Map<String, Object> readableParams(Map<String, Object> params) {
+        if(params == null)
+            return null;
+        Map<String, Object> readable = null;
+        for (Map.Entry<String, Object> entry : params.entrySet()) {
+            if(entry.getValue() instanceof byte[]) {
+                if(readable == null)
+                    readable = new HashMap<>(params);
+                readable.put(entry.getKey(), new String((byte[]) entry.getValue(), UTF_8));
+            }
+        }
+        return readable != null ? readable : params;
+    }
 }
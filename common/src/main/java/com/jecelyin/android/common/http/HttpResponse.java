@@ -1,5 +1,6 @@
 package com.jecelyin.android.common.http;
 
+import com.squareup.okhttp.Request;
 import com.squareup.okhttp.Response;
 
 import java.io.IOException;
@@ -9,6 +10,7 @@ import java.util.Map;
 import static java.net.HttpURLConnection.HTTP_MOVED_PERM;
 import static java.net.HttpURLConnection.HTTP_MOVED_TEMP;
 import static java.net.HttpURLConnection.HTTP_MULT_CHOICE;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
 import static java.net.HttpURLConnection.HTTP_SEE_OTHER;
 
 /**
@@ -17,24 +19,46 @@ import static java.net.HttpURLConnection.HTTP_SEE_OTHER;
  * are immutable.
  */
 public final class HttpResponse {
-    private final HttpRequest request;
+    private HttpRequest request;
+    /** 没有调用 {@link #request()} 之前不创建 HttpRequest */
+    private Request rawRequest;
+    private Map<String, Object> data;
     private final int code;
     private final String message;
     private final String tag;
     private final HttpHeaders headers;
     private final HttpResponseBody body;
     private boolean isCacheResponse;
+    private boolean isRevalidating;
+    /** okhttp验证缓存时服务器返回了304，响应内容来自缓存 */
+    private boolean isNotModified;
+    private RequestMetrics metrics;
 
     private HttpResponse(Builder builder) {
         this.request = builder.request;
         this.code = builder.code;
         this.message = builder.message;
         this.tag = builder.tag;
-        this.headers = builder.headers.build();
+        this.headers = builder.headers != null ? builder.headers.build() : builder.wrappedHeaders;
         this.body = builder.body;
         this.isCacheResponse = builder.isCacheResponse;
     }
 
+    /**
+     * 直接使用okhttp响应的请求和响应头，不复制
+     */
+    HttpResponse(Response response, Map<String, Object> data, String tag) {
+        this.rawRequest = response.request();
+        this.data = data;
+        this.code = response.code();
+        this.message = response.message();
+        this.tag = tag;
+        this.headers = HttpHeaders.of(response.headers());
+        this.body = new HttpResponseBody(response.body());
+        Response networkResponse = response.networkResponse();
+        this.isNotModified = networkResponse != null && networkResponse.code() == HTTP_NOT_MODIFIED;
+    }
+
     public boolean isCacheResponse() {
         return isCacheResponse;
     }
@@ -43,6 +67,33 @@ public final class HttpResponse {
         this.isCacheResponse = isCacheResponse;
     }
 
+    /**
+     * 缓存结果返回后是否还在请求网络，网络结果有变化时会再回调一次，
+     * 否则回调 {@link OnHttpResponseListener#onNotModified}
+     */
+    public boolean isRevalidating() {
+        return isRevalidating;
+    }
+
+    public void setIsRevalidating(boolean isRevalidating) {
+        this.isRevalidating = isRevalidating;
+    }
+
+    boolean isNotModified() {
+        return isNotModified;
+    }
+
+    /**
+     * 网络请求的耗时统计，缓存响应或没有开启 {@link HttpMetrics} 时返回null
+     */
+    public RequestMetrics metrics() {
+        return metrics;
+    }
+
+    void setMetrics(RequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * The wire-level request that initiated this HTTP response. This is not
      * necessarily the same request issued by the application:
@@ -54,10 +105,24 @@ public final class HttpResponse {
      *         different than the initial request URL.
      * </ul>
      */
-    public HttpRequest request() {
+    public synchronized HttpRequest request() {
+        if(request == null && rawRequest != null) {
+            request = new HttpRequest(rawRequest, data, tag);
+            rawRequest = null;
+            data = null;
+        }
         return request;
     }
 
+    /**
+     * 请求的URL，不会创建HttpRequest
+     */
+    synchronized String url() {
+        if(request != null)
+            return request.url;
+        return rawRequest != null ? rawRequest.urlString() : null;
+    }
+
     /** Returns the HTTP status code. */
     public int code() {
         return code;
@@ -120,7 +185,7 @@ public final class HttpResponse {
                 + ", message="
                 + message
                 + ", url="
-                + request.url
+                + url()
                 + '}';
     }
 
@@ -130,6 +195,8 @@ public final class HttpResponse {
         private String message;
         private String tag;
         private HttpHeaders.Builder headers;
+        /** 未修改时直接使用okhttp响应头，不复制 */
+        private HttpHeaders wrappedHeaders;
         private HttpResponseBody body;
         private boolean isCacheResponse;
 
@@ -138,13 +205,23 @@ public final class HttpResponse {
         }
 
         public Builder(Response response, Map<String, Object> data, String tag) throws IOException {
-            this();
             request = new HttpRequest(response.request(), data, tag);
             code = response.code();
             message = response.message();
             this.tag = tag;
-            headers = new HttpHeaders.Builder(response.headers());
-            body = new HttpResponseBody(response.body().bytes());
+            wrappedHeaders = HttpHeaders.of(response.headers());
+            body = new HttpResponseBody(response.body());
+        }
+
+        private HttpHeaders.Builder headers() {
+            if(headers == null) {
+                headers = new HttpHeaders.Builder();
+                for (int i = 0, size = wrappedHeaders.size(); i < size; i++) {
+                    headers.addLenient(wrappedHeaders.name(i), wrappedHeaders.value(i));
+                }
+                wrappedHeaders = null;
+            }
+            return headers;
         }
 
         public Builder request(HttpRequest request) {
@@ -177,7 +254,7 @@ public final class HttpResponse {
          * already has any headers with that name, they are all replaced.
          */
         public Builder header(String name, String value) {
-            headers.set(name, value);
+            headers().set(name, value);
             return this;
         }
 
@@ -186,12 +263,12 @@ public final class HttpResponse {
          * multiply-valued headers like "Set-Cookie".
          */
         public Builder addHeader(String name, String value) {
-            headers.add(name, value);
+            headers().add(name, value);
             return this;
         }
 
         public Builder removeHeader(String name) {
-            headers.removeAll(name);
+            headers().removeAll(name);
             return this;
         }
 
@@ -15,16 +15,68 @@
  */
 package com.jecelyin.android.common.http;
 
+import android.os.SystemClock;
+
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
+/**
+ * A one-shot response body. The bytes are only read from the network source
+ * when {@link #bytes()} or {@link #string()} is called; callers that only need
+ * to decode the payload once should use {@link #byteStream()} instead so the
+ * body is never materialized in memory.
+ *
+ * <p>The network source is closed when {@link OnHttpResponseListener#onResponse}
+ * returns, unless the listener has read the body or taken its stream by then.
+ * {@link BeanResponse} decodes the body itself and leaves it consumed; see
+ * {@link BeanResponse#setKeepBody(boolean)}.
+ */
 public class HttpResponseBody {
-  private final byte[] bytes;
+  private ResponseBody source;
+  private byte[] bytes;
+  private volatile long streamedCount;
+  private volatile long readStartTime;
+  private volatile long readEndTime;
+  /** The source is read later on another thread and must not be closed by HttpClient. */
+  private boolean retained;
 
   HttpResponseBody(byte[] bytes) {
     this.bytes = bytes;
   }
 
+  HttpResponseBody(ResponseBody source) {
+    this.source = source;
+  }
+
+  /**
+   * Reads the whole body into memory on first call and returns the same array
+   * afterwards. Throws if the body has already been consumed as a stream.
+   * Read failures are rethrown unchecked to keep the original signature; use
+   * {@link #string()} to get them as {@link IOException}.
+   */
   public final byte[] bytes() {
+    try {
+      return readBytes();
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to read response body", e);
+    }
+  }
+
+  final synchronized byte[] readBytes() throws IOException {
+    if (bytes == null) {
+      ResponseBody body = takeSource();
+      readStartTime = SystemClock.uptimeMillis();
+      try {
+        bytes = body.bytes();
+        readEndTime = SystemClock.uptimeMillis();
+      } finally {
+        body.close();
+      }
+    }
     return bytes;
   }
 
@@ -34,7 +86,102 @@ public class HttpResponseBody {
    * this will attempt to decode the response body as UTF-8.
    */
   public final String string() throws IOException {
-    return new String(bytes(), "UTF-8");
+    return new String(readBytes(), "UTF-8");
+  }
+
+  /**
+   * Returns a stream over the body. If the body has not been materialized the
+   * network source is handed over directly, so the body can only be read once
+   * and the caller must close the stream.
+   */
+  public final synchronized InputStream byteStream() throws IOException {
+    if (bytes != null) {
+      return new ByteArrayInputStream(bytes);
+    }
+    return new FilterInputStream(takeSource().byteStream()) {
+      @Override public int read() throws IOException {
+        if (readStartTime == 0) readStartTime = SystemClock.uptimeMillis();
+        int b = super.read();
+        if (b != -1) streamedCount++;
+        else if (readEndTime == 0) readEndTime = SystemClock.uptimeMillis();
+        return b;
+      }
+
+      @Override public int read(byte[] buffer, int offset, int count) throws IOException {
+        if (readStartTime == 0) readStartTime = SystemClock.uptimeMillis();
+        int n = super.read(buffer, offset, count);
+        if (n > 0) streamedCount += n;
+        else if (n == -1 && readEndTime == 0) readEndTime = SystemClock.uptimeMillis();
+        return n;
+      }
+
+      /** Parsers such as JSONReader may stop at the end of the value without reading EOF. */
+      @Override public void close() throws IOException {
+        if (readStartTime != 0 && readEndTime == 0) readEndTime = SystemClock.uptimeMillis();
+        super.close();
+      }
+    };
+  }
+
+  final synchronized boolean isMaterialized() {
+    return bytes != null;
   }
 
+  /**
+   * Drops the materialized bytes, leaving the body consumed just as if it had
+   * been streamed. {@link #byteCount()} keeps reporting the body size.
+   */
+  final synchronized void discard() {
+    if (bytes != null) {
+      streamedCount = bytes.length;
+      bytes = null;
+    }
+    close();
+  }
+
+  /** Keeps the source open after the listener returns, for listeners that read it on another thread. */
+  final synchronized void retain() {
+    retained = true;
+  }
+
+  /** Called by {@link HttpClient} once the listener's {@code onResponse} has returned. */
+  final synchronized void closeUnlessRetained() {
+    if (!retained) close();
+  }
+
+  /** Returns the number of body bytes read so far, from memory or from the stream. */
+  public final long byteCount() {
+    return bytes != null ? bytes.length : streamedCount;
+  }
+
+  /**
+   * Returns the time between the first read from the network source and the
+   * end of the stream or the stream being closed, or -1 if the body was not read.
+   */
+  final long downloadMillis() {
+    return readEndTime == 0 ? -1 : readEndTime - readStartTime;
+  }
+
+  /** Releases the network source if nobody has consumed it. */
+  public final synchronized void close() {
+    if (source == null)
+      return;
+    try {
+      source.close();
+    } catch (IOException e) {
+      // ignore
+    } finally {
+      source = null;
+    }
+  }
+
+  private ResponseBody takeSource() {
+    if (source == null) {
+      throw new IllegalStateException("response body already consumed or closed; read it inside"
+          + " onResponse(), or use BeanResponse.setKeepBody(true) to read it after the bean is decoded");
+    }
+    ResponseBody body = source;
+    source = null;
+    return body;
+  }
 }
@@ -0,0 +1,111 @@
+package com.jecelyin.android.common.http;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 合并相同的进行中请求：相同方法、URL和参数的请求只发起一次网络调用，结果分发给所有监听者。
+ * 只有最后一个订阅者取消时才真正取消网络请求。
+ * 缓存结果分发后不再接受新的订阅者，避免后加入的只收到 {@link OnHttpResponseListener#onNotModified}。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+final class InFlightRequests {
+    private static final Map<String, Group> groupsByKey = new HashMap<>();
+    private static final Map<String, Group> groupsByTag = new HashMap<>();
+
+    static final class Subscriber {
+        final HttpClient client;
+        final String tag;
+        final OnHttpResponseListener<?> listener;
+
+        Subscriber(HttpClient client, String tag, OnHttpResponseListener<?> listener) {
+            this.client = client;
+            this.tag = tag;
+            this.listener = listener;
+        }
+    }
+
+    static final class Group {
+        final String key;
+        /** 实际网络请求使用的tag */
+        final String callTag;
+        final List<Subscriber> subscribers = new ArrayList<>(2);
+
+        Group(String key, String callTag) {
+            this.key = key;
+            this.callTag = callTag;
+        }
+    }
+
+    private InFlightRequests() {
+    }
+
+    /**
+     * 加入一个已存在的相同请求，否则以当前订阅者创建新的请求组
+     * @return 加入已有请求时返回null；否则返回新建的请求组，调用方需要负责发起网络请求
+     */
+    static synchronized Group join(String key, Subscriber subscriber) {
+        Group group = groupsByKey.get(key);
+        Group created = null;
+        if(group == null) {
+            group = created = new Group(key, subscriber.tag);
+            groupsByKey.put(key, group);
+        }
+        group.subscribers.add(subscriber);
+        groupsByTag.put(subscriber.tag, group);
+        return created;
+    }
+
+    /**
+     * 取出需要通知的订阅者，之后不再接受新的订阅者：
+     * 已经分发过的缓存结果无法再补发，后来的相同请求需要单独发起
+     * @param finished 网络请求已结束，同时移除订阅者
+     */
+    static synchronized List<Subscriber> subscribers(Group group, boolean finished) {
+        if(groupsByKey.get(group.key) == group)
+            groupsByKey.remove(group.key);
+        if(finished) {
+            for (Subscriber s : group.subscribers) {
+                if(groupsByTag.get(s.tag) == group)
+                    groupsByTag.remove(s.tag);
+            }
+        }
+        return new ArrayList<>(group.subscribers);
+    }
+
+    /**
+     * 是否有可以加入的相同请求
+     */
+    static synchronized boolean contains(String key) {
+        return groupsByKey.containsKey(key);
+    }
+
+    /**
+     * 还有订阅者等待结果，用于决定是否重试
+     */
+    static synchronized boolean hasSubscribers(Group group) {
+        return !group.subscribers.isEmpty();
+    }
+
+    /**
+     * 取消一个订阅者
+     * @return 需要取消的网络请求tag；请求未被合并时返回tag本身，仍有其它订阅者时返回null
+     */
+    static synchronized String cancel(String tag) {
+        Group group = groupsByTag.remove(tag);
+        if(group == null)
+            return tag;
+        for (int i = group.subscribers.size() - 1; i >= 0; i--) {
+            if(tag.equals(group.subscribers.get(i).tag))
+                group.subscribers.remove(i);
+        }
+        if(!group.subscribers.isEmpty())
+            return null;
+        if(groupsByKey.get(group.key) == group)
+            groupsByKey.remove(group.key);
+        return group.callTag;
+    }
+}
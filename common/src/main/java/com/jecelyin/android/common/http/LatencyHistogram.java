@@ -0,0 +1,100 @@
+package com.jecelyin.android.common.http;
+
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * 耗时分布统计，毫秒值按约15%的相对精度分桶，内存占用固定，可以长期记录线上数据。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public final class LatencyHistogram {
+    private static final long MAX_VALUE = 10 * 60 * 1000;
+    /** 每个桶的上界（含） */
+    private static final long[] BOUNDS;
+
+    static {
+        long[] bounds = new long[128];
+        int n = 0;
+        long v = 0;
+        while (v < MAX_VALUE) {
+            bounds[n++] = v;
+            v = v < 10 ? v + 1 : (long) Math.ceil(v * 1.15);
+        }
+        bounds[n++] = MAX_VALUE;
+        BOUNDS = Arrays.copyOf(bounds, n);
+    }
+
+    private final int[] counts = new int[BOUNDS.length + 1];
+    private int count;
+    private long sum;
+    private long max;
+
+    public synchronized void record(long millis) {
+        if(millis < 0)
+            return;
+        int index = Arrays.binarySearch(BOUNDS, millis);
+        if(index < 0)
+            index = -index - 1;
+        counts[index]++;
+        count++;
+        sum += millis;
+        if(millis > max)
+            max = millis;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized long getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * @param percentile 0到100，如99表示P99
+     * @return 所在桶的上界，不超过记录到的最大值
+     */
+    public synchronized long getPercentile(double percentile) {
+        if(count == 0)
+            return 0;
+        long rank = (long) Math.ceil(count * percentile / 100);
+        if(rank < 1)
+            rank = 1;
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if(seen >= rank)
+                return i < BOUNDS.length ? Math.min(BOUNDS[i], max) : max;
+        }
+        return max;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    public synchronized JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("count", count);
+        json.put("mean", getMean());
+        json.put("p50", getPercentile(50));
+        json.put("p90", getPercentile(90));
+        json.put("p99", getPercentile(99));
+        json.put("max", max);
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return toJSON().toJSONString();
+    }
+}
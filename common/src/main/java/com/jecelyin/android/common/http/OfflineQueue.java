@@ -0,0 +1,400 @@
+package com.jecelyin.android.common.http;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.jecelyin.android.common.api.AbstractApi;
+import com.jecelyin.android.common.utils.L;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 离线请求队列：无网络或网络失败时，允许排队的POST请求（{@link com.jecelyin.android.common.api.AbstractApi#isOfflineQueueable()}）
+ * 会写入缓存目录下的日志文件，网络恢复后以后台优先级连续逐个发送，减少唤醒无线模块的次数。
+ * 相同幂等key的请求只保留一个，发送时带上 Idempotency-Key 请求头。
+ * 重发时用Api的无参构造函数重新创建Api并调用 handleParams，签名和请求时间都是新的。
+ *
+ * 日志文件每行一条JSON记录，add表示入队，done表示已发送成功，启动时重放日志恢复队列。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public class OfflineQueue {
+    private static final String TAG = "OfflineQueue";
+    private static final String JOURNAL_FILE = "http_queue.journal";
+    private static final int COMPACT_THRESHOLD = 64;
+
+    private static OfflineQueue instance;
+
+    private final Context context;
+    private final File journalFile;
+    private Sender sender;
+    /** 日志读写都在这个线程 */
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private int doneCount;
+    private boolean flushing;
+
+    static final class Entry {
+        final String key;
+        final String method;
+        final String url;
+        /** handleParams处理后的参数，无法重新创建Api时使用 */
+        final Map<String, Object> params;
+        /** Api类名和handleParams前的参数，重发时重新处理 */
+        final String apiClass;
+        final Map<String, Object> rawParams;
+
+        Entry(String key, String method, String url, Map<String, Object> params, String apiClass, Map<String, Object> rawParams) {
+            this.key = key;
+            this.method = method;
+            this.url = url;
+            this.params = toJournalParams(params);
+            this.apiClass = apiClass;
+            this.rawParams = rawParams;
+        }
+
+        JSONObject toRecord() {
+            JSONObject record = new JSONObject();
+            record.put("op", "add");
+            record.put("key", key);
+            record.put("method", method);
+            record.put("url", url);
+            record.put("params", params);
+            record.put("api", apiClass);
+            record.put("rawParams", rawParams);
+            return record;
+        }
+    }
+
+    /**
+     * 发送队列中的请求，默认经过 {@link HttpClient}
+     */
+    interface Sender {
+        void send(String tag, String method, String url, HttpHeaders headers, Map<String, Object> params, OnHttpResponseListener<Object> listener);
+    }
+
+    private OfflineQueue(Context context) {
+        this(context.getApplicationContext(), new File(context.getCacheDir(), JOURNAL_FILE), null);
+    }
+
+    /**
+     * @param sender null表示使用 {@link HttpClient} 以后台优先级发送
+     */
+    OfflineQueue(Context context, File journalFile, Sender sender) {
+        this.context = context;
+        this.journalFile = journalFile;
+        this.sender = sender;
+    }
+
+    /**
+     * 在Application中调用，恢复未发送的请求并监听网络状态
+     */
+    public synchronized static OfflineQueue init(Context context) {
+        if(instance == null) {
+            instance = new OfflineQueue(context);
+            instance.start();
+        }
+        return instance;
+    }
+
+    /**
+     * @return 未初始化时返回null
+     */
+    synchronized static OfflineQueue getInstance() {
+        return instance;
+    }
+
+    private void start() {
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                readJournal();
+                if(isOnline(context))
+                    flush();
+            }
+        });
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if(isOnline(context))
+                    flush();
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    static boolean isOnline(Context context) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        try {
+            NetworkInfo info = cm.getActiveNetworkInfo();
+            return info != null && info.isConnected();
+        } catch (SecurityException e) {
+            //没有 ACCESS_NETWORK_STATE 权限时当作在线
+            return true;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 只重放日志恢复队列，不监听网络也不发送
+     */
+    void restore() {
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                readJournal();
+            }
+        });
+    }
+
+    /**
+     * 已提交的日志写入完成后在日志线程执行action，如进程即将退出前确保排队的请求已写入磁盘
+     */
+    public void afterPendingWrites(Runnable action) {
+        ioExecutor.execute(action);
+    }
+
+    /**
+     * 入队，相同key的请求已在队列中时忽略
+     */
+    void enqueue(final Entry entry) {
+        synchronized (this) {
+            if(entries.containsKey(entry.key))
+                return;
+            entries.put(entry.key, entry);
+        }
+        L.d(TAG, "queued " + entry.url);
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                appendJournal(entry.toRecord());
+            }
+        });
+    }
+
+    /**
+     * 发送队列中的所有请求，成功的记录为done，失败的留到下次网络恢复
+     */
+    public void flush() {
+        final List<Entry> batch;
+        synchronized (this) {
+            if(flushing || entries.isEmpty())
+                return;
+            flushing = true;
+            batch = new ArrayList<>(entries.values());
+        }
+        L.d(TAG, "flush " + batch.size() + " requests");
+
+        sendNext(getSender(), batch.iterator());
+    }
+
+    private synchronized Sender getSender() {
+        if(sender == null) {
+            final HttpClient httpClient = HttpClient.newInstance(context);
+            sender = new Sender() {
+                @Override
+                public void send(String tag, String method, String url, HttpHeaders headers, Map<String, Object> params, OnHttpResponseListener<Object> listener) {
+                    httpClient.request(tag, method, url, headers, params, RequestPriority.BACKGROUND, listener);
+                }
+            };
+        }
+        return sender;
+    }
+
+    /**
+     * 上一个请求完成后再发下一个，经过 {@link PriorityDispatcher} 以后台优先级发送，不和用户等待的请求抢连接。
+     * 网络失败时停止，剩下的留到下次网络恢复
+     */
+    private void sendNext(final Sender sender, final Iterator<Entry> it) {
+        if(!it.hasNext()) {
+            finished();
+            return;
+        }
+        final Entry entry = it.next();
+        HttpHeaders headers = new HttpHeaders.Builder().add("Idempotency-Key", entry.key).build();
+        sender.send("OfflineQueue-" + entry.key, entry.method, entry.url, headers,
+                paramsToSend(entry), new OnHttpResponseListener<Object>() {
+            @Override
+            public void onFailure(HttpClient httpClient, HttpRequest request, Exception e) {
+                finished();
+            }
+
+            @Override
+            public void onResponse(HttpClient httpClient, HttpResponse response) {
+                response.body().close();
+                //服务器错误留到下次重发，客户端错误重发也不会成功
+                if(response.code() < 500)
+                    markDone(entry);
+                sendNext(sender, it);
+            }
+        });
+    }
+
+    private synchronized void finished() {
+        flushing = false;
+    }
+
+    /**
+     * 重新创建Api处理参数，更新签名和请求时间；Api没有无参构造函数（如匿名类）时使用入队时处理好的参数
+     */
+    private Map<String, Object> paramsToSend(Entry entry) {
+        if(entry.apiClass != null && entry.rawParams != null) {
+            try {
+                Constructor<?> constructor = Class.forName(entry.apiClass).getDeclaredConstructor();
+                constructor.setAccessible(true);
+                AbstractApi api = (AbstractApi) constructor.newInstance();
+                Map<String, Object> params = new HashMap<>(entry.rawParams);
+                api.handleParams(context, params);
+                return params;
+            } catch (Exception e) {
+                L.w(TAG, "can't recreate " + entry.apiClass + ": " + e);
+            }
+        }
+        return new HashMap<>(entry.params);
+    }
+
+    private void markDone(final Entry entry) {
+        synchronized (this) {
+            entries.remove(entry.key);
+        }
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                JSONObject record = new JSONObject();
+                record.put("op", "done");
+                record.put("key", entry.key);
+                appendJournal(record);
+                doneCount++;
+                if(doneCount >= COMPACT_THRESHOLD)
+                    compactJournal();
+            }
+        });
+    }
+
+    /**
+     * byte[]参数（如ApiV2的params）按UTF-8文本保存
+     */
+    private static Map<String, Object> toJournalParams(Map<String, Object> params) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> e : params.entrySet()) {
+            Object value = e.getValue();
+            if(value instanceof byte[]) {
+                try {
+                    value = new String((byte[]) value, "UTF-8");
+                } catch (UnsupportedEncodingException ex) {
+                    throw new RuntimeException("Encoding not supported: UTF-8", ex);
+                }
+            }
+            result.put(e.getKey(), value);
+        }
+        return result;
+    }
+
+    private void readJournal() {
+        if(!journalFile.exists())
+            return;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JSONObject record;
+                try {
+                    record = JSON.parseObject(line);
+                } catch (Exception e) {
+                    //最后一行可能没写完整
+                    L.e(e);
+                    continue;
+                }
+                String key = record.getString("key");
+                if("add".equals(record.getString("op"))) {
+                    JSONObject params = record.getJSONObject("params");
+                    synchronized (this) {
+                        entries.put(key, new Entry(key, record.getString("method"), record.getString("url"),
+                                params == null ? new HashMap<String, Object>() : params,
+                                record.getString("api"), record.getJSONObject("rawParams")));
+                    }
+                } else {
+                    synchronized (this) {
+                        entries.remove(key);
+                    }
+                    doneCount++;
+                }
+            }
+        } catch (IOException e) {
+            L.e(e);
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    private void appendJournal(JSONObject record) {
+        write(journalFile, true, record.toJSONString() + "\n");
+    }
+
+    /**
+     * 只保留未完成的记录重写日志
+     */
+    private void compactJournal() {
+        StringBuilder sb = new StringBuilder();
+        synchronized (this) {
+            for (Entry entry : entries.values()) {
+                sb.append(entry.toRecord().toJSONString()).append('\n');
+            }
+        }
+        File tmp = new File(journalFile.getPath() + ".tmp");
+        if(write(tmp, false, sb.toString()) && tmp.renameTo(journalFile))
+            doneCount = 0;
+    }
+
+    private static boolean write(File file, boolean append, String text) {
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file, append), "UTF-8");
+            writer.write(text);
+            writer.flush();
+            return true;
+        } catch (IOException e) {
+            L.e(e);
+            return false;
+        } finally {
+            closeQuietly(writer);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if(closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.jecelyin.android.common.http;
+
+import java.io.IOException;
+
+/**
+ * 请求因为无网络或网络失败未能发送，已放入 {@link OfflineQueue}，网络恢复后会自动重发
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public class OfflineQueuedException extends IOException {
+
+    public OfflineQueuedException() {
+        super("Offline, request queued");
+    }
+
+    public OfflineQueuedException(Throwable cause) {
+        super("Network error, request queued", cause);
+    }
+}
@@ -1,8 +1,7 @@
 package com.jecelyin.android.common.http;
 
-import com.squareup.okhttp.Response;
+import com.jecelyin.android.common.utils.ReflectUtils;
 
-import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 
 /**
@@ -12,8 +11,15 @@ public abstract class OnHttpResponseListener<T> {
     final Type type;
 
     public OnHttpResponseListener() {
-        Type superClass = getClass().getGenericSuperclass();
-        type = ((ParameterizedType) superClass).getActualTypeArguments()[0];
+        type = ReflectUtils.getSuperclassTypeArgument(getClass());
+    }
+
+    /**
+     * @param type 已知的结果类型，不再从子类的泛型参数获取。泛型参数本身是类型变量时
+     *             （如在泛型类中创建的匿名监听者）必须使用这个构造方法
+     */
+    protected OnHttpResponseListener(Type type) {
+        this.type = type;
     }
 
     protected Type getType() {
@@ -31,9 +37,12 @@ public abstract class OnHttpResponseListener<T> {
     /**
      * Called when the HTTP response was successfully returned by the remote
      * server. The callback may proceed to read the response body with {@link
-     * Response#body}. The response is still live until its response body is
-     * closed with {@code response.body().close()}. The recipient of the callback
-     * may even consume the response body on another thread.
+     * HttpResponse#body}. The body must be read, or its stream taken with
+     * {@code byteStream()}, before this method returns: otherwise it is closed
+     * so that the connection goes back to the pool. A body read with {@code
+     * bytes()} or {@code string()} stays available afterwards; a stream taken
+     * here may be consumed on another thread and must then be closed by the
+     * caller.
      *
      * <p>Note that transport-layer success (receiving a HTTP response code,
      * headers and body) does not necessarily indicate application-layer
@@ -41,4 +50,11 @@ public abstract class OnHttpResponseListener<T> {
      * code like 404 or 500.
      */
     public abstract void onResponse(HttpClient httpClient, HttpResponse response);
+
+    /**
+     * Called when the network revalidation of an already delivered cache
+     * response returned 304 Not Modified, so no second result follows.
+     */
+    public void onNotModified(HttpClient httpClient, HttpRequest request) {
+    }
 }
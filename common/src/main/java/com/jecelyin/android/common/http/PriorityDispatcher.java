@@ -0,0 +1,129 @@
+package com.jecelyin.android.common.http;
+
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 按 {@link RequestPriority} 调度请求：{@link RequestPriority#USER_VISIBLE} 的请求直接交给okhttp，
+ * 其它请求只在没有用户等待的请求进行时发出，并且同时进行的数量有限制。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+final class PriorityDispatcher {
+    private final int maxDeferredRequests;
+    private final PriorityQueue<PendingCall> pending = new PriorityQueue<>();
+    private int runningVisible;
+    private int runningDeferred;
+    private long sequence;
+
+    private static final class PendingCall implements Comparable<PendingCall> {
+        final OkHttpClient client;
+        final Request request;
+        final Callback callback;
+        final RequestPriority priority;
+        final long seq;
+
+        PendingCall(OkHttpClient client, Request request, Callback callback, RequestPriority priority, long seq) {
+            this.client = client;
+            this.request = request;
+            this.callback = callback;
+            this.priority = priority;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(PendingCall another) {
+            int result = priority.compareTo(another.priority);
+            if(result != 0)
+                return result;
+            return seq < another.seq ? -1 : (seq == another.seq ? 0 : 1);
+        }
+    }
+
+    PriorityDispatcher(int maxDeferredRequests) {
+        this.maxDeferredRequests = maxDeferredRequests;
+    }
+
+    void enqueue(OkHttpClient client, Request request, Callback callback, RequestPriority priority) {
+        PendingCall call;
+        synchronized (this) {
+            call = new PendingCall(client, request, callback, priority, sequence++);
+            if(priority == RequestPriority.USER_VISIBLE) {
+                runningVisible++;
+            } else if(canRunDeferred()) {
+                runningDeferred++;
+            } else {
+                pending.add(call);
+                return;
+            }
+        }
+        start(call);
+    }
+
+    /**
+     * 取消还在等待中的请求，已交给okhttp的请求由okhttp取消
+     */
+    void cancel(Object tag) {
+        List<PendingCall> canceled = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<PendingCall> it = pending.iterator(); it.hasNext(); ) {
+                PendingCall call = it.next();
+                if(tag.equals(call.request.tag())) {
+                    it.remove();
+                    canceled.add(call);
+                }
+            }
+        }
+        for (PendingCall call : canceled) {
+            call.callback.onFailure(call.request, new CanceledException());
+        }
+    }
+
+    private boolean canRunDeferred() {
+        return runningVisible == 0 && runningDeferred < maxDeferredRequests;
+    }
+
+    private void start(final PendingCall call) {
+        final Call c = call.client.newCall(call.request);
+        c.enqueue(new Callback() {
+            @Override
+            public void onFailure(Request request, IOException e) {
+                finished(call.priority);
+                call.callback.onFailure(request, c.isCanceled() ? new CanceledException(e) : e);
+            }
+
+            @Override
+            public void onResponse(Response response) throws IOException {
+                finished(call.priority);
+                call.callback.onResponse(response);
+            }
+        });
+    }
+
+    private void finished(RequestPriority priority) {
+        List<PendingCall> ready = new ArrayList<>();
+        synchronized (this) {
+            if(priority == RequestPriority.USER_VISIBLE) {
+                runningVisible--;
+            } else {
+                runningDeferred--;
+            }
+            while (!pending.isEmpty() && canRunDeferred()) {
+                ready.add(pending.poll());
+                runningDeferred++;
+            }
+        }
+        for (PendingCall call : ready) {
+            start(call);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.jecelyin.android.common.http;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.RequestBody;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+
+/**
+ * 包装请求体，写出时回调上传进度，并标记内容是否值得压缩
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public class ProgressRequestBody extends RequestBody {
+    /** 进度回调的最小间隔 */
+    private static final long PROGRESS_INTERVAL_MS = 100;
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final RequestBody delegate;
+    private final UploadProgressListener listener;
+    private final boolean compressible;
+
+    /**
+     * @param listener 可以为null
+     * @param compressible false表示内容已压缩（如JPEG），{@link GzipRequestInterceptor} 不再压缩
+     */
+    public ProgressRequestBody(RequestBody delegate, UploadProgressListener listener, boolean compressible) {
+        this.delegate = delegate;
+        this.listener = listener;
+        this.compressible = compressible;
+    }
+
+    public boolean isCompressible() {
+        return compressible;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        if(listener == null) {
+            delegate.writeTo(sink);
+            return;
+        }
+        final long total = contentLength();
+        BufferedSink progressSink = Okio.buffer(new ForwardingSink(sink) {
+            private long written;
+            private long lastNotify;
+
+            @Override
+            public void write(Buffer source, long byteCount) throws IOException {
+                super.write(source, byteCount);
+                written += byteCount;
+                long now = SystemClock.uptimeMillis();
+                if(now - lastNotify >= PROGRESS_INTERVAL_MS || written == total) {
+                    lastNotify = now;
+                    notifyProgress(written, total);
+                }
+            }
+        });
+        delegate.writeTo(progressSink);
+        progressSink.flush();
+    }
+
+    private void notifyProgress(final long written, final long total) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onUploadProgress(written, total);
+            }
+        });
+    }
+}
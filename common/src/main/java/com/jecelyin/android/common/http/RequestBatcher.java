@@ -0,0 +1,264 @@
+package com.jecelyin.android.common.http;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.util.TypeUtils;
+import com.jecelyin.android.common.api.AbstractApi;
+import com.jecelyin.android.common.api.BatchApi;
+import com.jecelyin.android.common.bean.BaseBean;
+import com.jecelyin.android.common.utils.L;
+
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把短时间内发出的多个Api请求合并为一个 {@link BatchApi} 请求，减少高延迟网络下的往返次数，
+ * 响应拆分后分别回调给各自的 {@link BeanResponse}。
+ * 以下请求直接单独发送：窗口内只有一个请求、请求中包含文件、HttpClient设置了缓存策略的GET请求
+ * （需要经过 {@link BeanCache} 和okhttp缓存），以及已有相同请求正在进行、可以与它合并的请求。
+ * <pre>
+ * RequestBatcher batcher = new RequestBatcher(httpClient, new MyBatchApi());
+ * batcher.request(new HeaderApi(), headerResponse);
+ * String tag = batcher.request(new ListApi(), listResponse);
+ * batcher.cancel(tag);
+ * </pre>
+ * 合并的请求同样可以被 {@link HttpClient#cancelAll(Object)} 取消，取消后不再回调监听者。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public class RequestBatcher {
+    private static final long DEFAULT_WINDOW_MS = 20;
+
+    private final HttpClient httpClient;
+    private final BatchApi batchApi;
+    private final long windowMs;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Item> pending = new ArrayList<>();
+    /** 已合并发送的请求tag -> 批量请求tag */
+    private final Map<String, String> sentTags = new HashMap<>();
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    static final class Item {
+        final String tag;
+        final AbstractApi api;
+        final BeanResponse<?> listener;
+
+        Item(String tag, AbstractApi api, BeanResponse<?> listener) {
+            this.tag = tag;
+            this.api = api;
+            this.listener = listener;
+        }
+    }
+
+    public RequestBatcher(HttpClient httpClient, BatchApi batchApi) {
+        this(httpClient, batchApi, DEFAULT_WINDOW_MS);
+    }
+
+    public RequestBatcher(HttpClient httpClient, BatchApi batchApi, long windowMs) {
+        this.httpClient = httpClient;
+        this.batchApi = batchApi;
+        this.windowMs = windowMs;
+    }
+
+    /**
+     * 在主线程调用
+     * @return 请求的tag，用于 {@link #cancel(String)}
+     */
+    public String request(AbstractApi api, BeanResponse<?> listener) {
+        String tag = httpClient.getTagAndCount();
+        if(!isBatchable(api)) {
+            httpClient.request(tag, api, listener);
+            return tag;
+        }
+        httpClient.trackBatched(tag);
+        pending.add(new Item(tag, api, listener));
+        if(pending.size() == 1)
+            handler.postDelayed(flushRunnable, windowMs);
+        return tag;
+    }
+
+    private boolean isBatchable(AbstractApi api) {
+        if(hasFilePart(api.getParams()))
+            return false;
+        if(httpClient.getCachePolicy() != null && api.requestMethod() == AbstractApi.Method.GET)
+            return false;
+        return !httpClient.isInFlight(api);
+    }
+
+    /**
+     * 取消请求，取消后不再回调监听者。在主线程调用
+     */
+    public void cancel(String tag) {
+        for (int i = 0; i < pending.size(); i++) {
+            if(pending.get(i).tag.equals(tag)) {
+                pending.remove(i);
+                httpClient.untrackBatched(tag);
+                return;
+            }
+        }
+        String batchTag = sentTags.remove(tag);
+        if(batchTag == null) {
+            //单独发送的请求
+            httpClient.cancel(tag);
+            return;
+        }
+        httpClient.untrackBatched(tag);
+        //批量中的请求都取消后取消网络请求
+        if(!sentTags.containsValue(batchTag))
+            httpClient.cancel(batchTag);
+    }
+
+    /**
+     * 立即发送已收集的请求
+     */
+    public void flush() {
+        handler.removeCallbacks(flushRunnable);
+        final List<Item> batch = new ArrayList<>(pending.size());
+        for (Item item : pending) {
+            //等待期间被cancelAll取消
+            if(httpClient.isTracked(item.tag))
+                batch.add(item);
+            else
+                httpClient.untrackBatched(item.tag);
+        }
+        pending.clear();
+        if(batch.isEmpty())
+            return;
+
+        if(batch.size() == 1) {
+            Item item = batch.get(0);
+            httpClient.untrackBatched(item.tag);
+            httpClient.request(item.tag, item.api, item.listener);
+            return;
+        }
+
+        List<AbstractApi> apis = new ArrayList<>(batch.size());
+        for (Item item : batch) {
+            apis.add(item.api);
+        }
+        batchApi.setRequests(httpClient.getContext(), apis);
+        String batchTag = httpClient.request(batchApi, new OnHttpResponseListener<Object>() {
+            @Override
+            public void onFailure(final HttpClient client, final HttpRequest request, final Exception e) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (Item item : batch) {
+                            if(finish(item))
+                                HttpClient.dispatchFailure(client, item.listener, request, e);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onResponse(final HttpClient client, final HttpResponse response) {
+                response.body().retain();
+                demultiplex(client, response, batch);
+            }
+        });
+        for (Item item : batch) {
+            sentTags.put(item.tag, batchTag);
+        }
+    }
+
+    /**
+     * 批量请求结束，在主线程调用
+     * @return false表示请求已被取消，不要回调监听者
+     */
+    private boolean finish(Item item) {
+        sentTags.remove(item.tag);
+        return httpClient.untrackBatched(item.tag);
+    }
+
+    private void demultiplex(final HttpClient client, final HttpResponse response, final List<Item> batch) {
+        DecodeScheduler.getInstance().execute(new DecodeScheduler.Task<List<BaseBean>>() {
+            @Override
+            protected List<BaseBean> doInBackground() {
+                return split(response, batch);
+            }
+
+            @Override
+            protected void onPostExecute(List<BaseBean> beans) {
+                if(L.debug)
+                    L.d("BeanRequest", "Batch URL=" + response.url() + " size=" + beans.size() + " decode=" + getDecodeMillis() + "ms");
+                for (int i = 0; i < batch.size(); i++) {
+                    Item item = batch.get(i);
+                    if(finish(item))
+                        deliver(item.listener, client, response, beans.get(i));
+                }
+            }
+        });
+    }
+
+    /**
+     * 按顺序拆分响应的 data 数组并转换为各监听者的Bean类型，缺少或无法转换的项为null
+     */
+    static List<BaseBean> split(HttpResponse response, List<Item> batch) {
+        List<BaseBean> beans = new ArrayList<>(batch.size());
+        JSONArray data = null;
+        try {
+            JSONReader reader = new JSONReader(new InputStreamReader(response.body().byteStream(), "UTF-8"));
+            try {
+                JSONObject envelope = reader.readObject(JSONObject.class);
+                data = envelope == null ? null : envelope.getJSONArray("data");
+            } finally {
+                reader.close();
+            }
+        } catch (Exception e) {
+            L.e(e);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            BaseBean bean = null;
+            if(data != null && i < data.size()) {
+                try {
+                    bean = TypeUtils.cast(data.get(i), batch.get(i).listener.getType(), ParserConfig.getGlobalInstance());
+                } catch (Exception e) {
+                    L.e(e);
+                }
+            }
+            beans.add(bean);
+        }
+        return beans;
+    }
+
+    /**
+     * bean已按监听者的 {@link BeanResponse#getType()} 转换，为null或状态失败时回调 onFailure
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends BaseBean> void deliver(BeanResponse<T> listener, HttpClient client, HttpResponse response, BaseBean bean) {
+        listener.deliver(client, response, (T) bean);
+    }
+
+    /**
+     * 文件或包含文件的列表需要multipart上传，不能放入批量请求的信封；其它列表按数组放入
+     */
+    private static boolean hasFilePart(Map<String, Object> params) {
+        for (Object value : params.values()) {
+            if(value instanceof File)
+                return true;
+            if(value instanceof Iterable) {
+                for (Object item : (Iterable<?>) value) {
+                    if(item instanceof File)
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+}
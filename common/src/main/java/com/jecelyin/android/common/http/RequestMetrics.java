@@ -0,0 +1,172 @@
+package com.jecelyin.android.common.http;
+
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一次网络请求各阶段的耗时，单位毫秒，-1表示没有这个阶段（如复用连接时没有DNS和握手）。
+ * 流式解析时下载和解析是交替进行的，下载时间包含了解析时间。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public final class RequestMetrics {
+    private final HttpMetrics owner;
+    private final String name;
+    private final String url;
+    private final String method;
+    private final int attempt;
+    private final long startTime;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    long callStartTime;
+    long dnsMillis = -1;
+    long connectMillis = -1;
+    long tlsMillis = -1;
+    long ttfbMillis = -1;
+    long downloadMillis = -1;
+    long decodeWaitMillis = -1;
+    long decodeMillis = -1;
+    long deliveryMillis = -1;
+    long totalMillis = -1;
+    boolean newConnection;
+    int code = -1;
+    long byteCount = -1;
+    Exception error;
+    HttpResponseBody body;
+
+    RequestMetrics(HttpMetrics owner, String name, String url, String method, int attempt) {
+        this.owner = owner;
+        this.name = name;
+        this.url = url;
+        this.method = method;
+        this.attempt = attempt;
+        this.startTime = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * 由最终处理响应的监听者接管，之后由它在回调结束时调用 {@link #finish()}
+     * @return false表示已被其它监听者接管
+     */
+    boolean claim() {
+        return claimed.compareAndSet(false, true);
+    }
+
+    boolean isClaimed() {
+        return claimed.get();
+    }
+
+    void fail(Exception e) {
+        error = e;
+        finish();
+    }
+
+    void finish() {
+        if(!finished.compareAndSet(false, true))
+            return;
+        totalMillis = SystemClock.uptimeMillis() - startTime;
+        if(body != null) {
+            downloadMillis = body.downloadMillis();
+            byteCount = body.byteCount();
+            body = null;
+        }
+        owner.record(this);
+    }
+
+    /** Api类名，直接用URL请求时是URL的路径 */
+    public String getName() {
+        return name;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /** 第几次重试，0表示第一次请求 */
+    public int getAttempt() {
+        return attempt;
+    }
+
+    public long getDnsMillis() {
+        return dnsMillis;
+    }
+
+    /** TCP连接时间 */
+    public long getConnectMillis() {
+        return connectMillis;
+    }
+
+    public long getTlsMillis() {
+        return tlsMillis;
+    }
+
+    /** 从开始发送请求到收到响应头 */
+    public long getTtfbMillis() {
+        return ttfbMillis;
+    }
+
+    /** 从开始读取响应体到读完 */
+    public long getDownloadMillis() {
+        return downloadMillis;
+    }
+
+    /** 在解析线程池中排队的时间 */
+    public long getDecodeWaitMillis() {
+        return decodeWaitMillis;
+    }
+
+    public long getDecodeMillis() {
+        return decodeMillis;
+    }
+
+    /** 从解析完成到主线程回调执行完 */
+    public long getDeliveryMillis() {
+        return deliveryMillis;
+    }
+
+    /** 从发起请求到回调执行完 */
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    /** 是否新建了连接，false表示复用了连接池中的连接 */
+    public boolean isNewConnection() {
+        return newConnection;
+    }
+
+    /** HTTP状态码，-1表示没有收到响应 */
+    public int getCode() {
+        return code;
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestMetrics{" + name
+                + " dns=" + dnsMillis
+                + " connect=" + connectMillis
+                + " tls=" + tlsMillis
+                + " ttfb=" + ttfbMillis
+                + " download=" + downloadMillis
+                + " decodeWait=" + decodeWaitMillis
+                + " decode=" + decodeMillis
+                + " delivery=" + deliveryMillis
+                + " total=" + totalMillis
+                + " code=" + code
+                + " bytes=" + byteCount
+                + (error != null ? " error=" + error : "")
+                + '}';
+    }
+}
@@ -0,0 +1,15 @@
+package com.jecelyin.android.common.http;
+
+/**
+ * 请求优先级，低优先级的请求在有用户等待的请求进行时会延后发出
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public enum RequestPriority {
+    /** 用户正在等待结果 */
+    USER_VISIBLE,
+    /** 预加载 */
+    PREFETCH,
+    /** 统计、错误上报等后台请求 */
+    BACKGROUND,
+}
@@ -0,0 +1,127 @@
+package com.jecelyin.android.common.http;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * 请求失败重试策略：指数退避加随机抖动，支持服务器的 Retry-After 响应头。
+ * 所有请求共享一个重试预算，每个新请求增加0.1次重试额度，
+ * 预算用完后不再重试，避免网络故障时的重试风暴。
+ * 默认只重试GET请求。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public final class RetryPolicy {
+    public static final RetryPolicy DEFAULT = new RetryPolicy(2, 500, 8000, false);
+
+    /** 预算以0.1次重试为单位计数，避免浮点累加误差（10个0.1相加小于1） */
+    private static final int BUDGET_UNITS_PER_RETRY = 10;
+    private static final int MAX_BUDGET = 10 * BUDGET_UNITS_PER_RETRY;
+
+    private static final Random random = new Random();
+    private static int budget = MAX_BUDGET;
+
+    private final int maxRetries;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final boolean retryNonIdempotent;
+
+    /**
+     * @param retryNonIdempotent 是否重试POST等非幂等请求
+     */
+    public RetryPolicy(int maxRetries, long baseDelayMs, long maxDelayMs, boolean retryNonIdempotent) {
+        if(maxRetries < 0) throw new IllegalArgumentException("maxRetries < 0: " + maxRetries);
+        if(baseDelayMs <= 0) throw new IllegalArgumentException("baseDelayMs <= 0: " + baseDelayMs);
+        if(maxDelayMs < baseDelayMs) throw new IllegalArgumentException("maxDelayMs < baseDelayMs");
+        this.maxRetries = maxRetries;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.retryNonIdempotent = retryNonIdempotent;
+    }
+
+    public int maxRetries() {
+        return maxRetries;
+    }
+
+    boolean canRetry(String method, int attempt) {
+        if(attempt >= maxRetries)
+            return false;
+        return retryNonIdempotent || "GET".equals(method) || "HEAD".equals(method);
+    }
+
+    /**
+     * 可以重试的HTTP状态码
+     */
+    static boolean isRetryableCode(int code) {
+        switch (code) {
+            case 408: // Request Timeout
+            case 429: // Too Many Requests
+            case 502: // Bad Gateway
+            case 503: // Service Unavailable
+            case 504: // Gateway Timeout
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 第 attempt 次重试前的等待时间：[0, min(maxDelay, base * 2^attempt)) 内随机
+     */
+    long backoffMillis(int attempt) {
+        long cap = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt, 16));
+        synchronized (random) {
+            return (long) (random.nextDouble() * cap);
+        }
+    }
+
+    /**
+     * @return Retry-After 要求的等待时间，没有该响应头时返回-1，超过最大等待时间时返回 Long.MAX_VALUE
+     */
+    long retryAfterMillis(String retryAfter) {
+        if(retryAfter == null)
+            return -1;
+        long delay;
+        try {
+            delay = Long.parseLong(retryAfter.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                Date date = format.parse(retryAfter);
+                delay = date.getTime() - System.currentTimeMillis();
+            } catch (ParseException pe) {
+                return -1;
+            }
+        }
+        delay = Math.max(0, delay);
+        return delay > maxDelayMs ? Long.MAX_VALUE : delay;
+    }
+
+    static synchronized void depositBudget() {
+        budget = Math.min(MAX_BUDGET, budget + 1);
+    }
+
+    static synchronized boolean withdrawBudget() {
+        if(budget < BUDGET_UNITS_PER_RETRY)
+            return false;
+        budget -= BUDGET_UNITS_PER_RETRY;
+        return true;
+    }
+
+    /**
+     * 恢复初始预算，用于测试
+     */
+    static synchronized void resetBudget() {
+        budget = MAX_BUDGET;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{maxRetries=" + maxRetries + ", baseDelay=" + baseDelayMs + ", maxDelay=" + maxDelayMs + '}';
+    }
+}
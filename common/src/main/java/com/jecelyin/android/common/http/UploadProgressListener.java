@@ -0,0 +1,13 @@
+package com.jecelyin.android.common.http;
+
+/**
+ * 上传进度，{@link OnHttpResponseListener} 实现这个接口时，上传文件的请求会在主线程回调进度
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public interface UploadProgressListener {
+    /**
+     * @param contentLength 未知时为-1
+     */
+    void onUploadProgress(long bytesWritten, long contentLength);
+}
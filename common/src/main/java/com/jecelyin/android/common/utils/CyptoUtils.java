@@ -2,7 +2,6 @@ package com.jecelyin.android.common.utils;
 
 import android.annotation.SuppressLint;
 
-import java.math.BigInteger;
 import java.security.Key;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -23,18 +22,40 @@ public class CyptoUtils {
 
 	public static final String ALGORITHM_DES = "DES/CBC/PKCS5Padding";
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     public static String md5(String pass) {
-        MessageDigest m = null;
+        String result = md5(pass.getBytes());
+        return result == null ? pass : result;
+    }
+
+    /**
+     * 依次把多段数据送入摘要计算，避免先拼接成一个大字符串
+     * @return 32位小写md5，算法不可用时返回null
+     */
+    public static String md5(byte[]... parts) {
         try {
-            m = MessageDigest.getInstance("MD5");
-            byte[] data = pass.getBytes();
-            m.update(data,0,data.length);
-            BigInteger i = new BigInteger(1,m.digest());
-            return String.format("%1$032x", i);
+            MessageDigest m = MessageDigest.getInstance("MD5");
+            for (byte[] data : parts) {
+                m.update(data, 0, data.length);
+            }
+            return toHex(m.digest());
         } catch (NoSuchAlgorithmException e) {
             e.printStackTrace();
-            return pass;
+            return null;
+        }
+    }
+
+    /**
+     * 小写十六进制编码
+     */
+    public static String toHex(byte[] b) {
+        char[] out = new char[b.length * 2];
+        for (int i = 0, j = 0; i < b.length; i++) {
+            out[j++] = HEX_DIGITS[(b[i] >> 4) & 0x0F];
+            out[j++] = HEX_DIGITS[b[i] & 0x0F];
         }
+        return new String(out);
     }
     /**
      * DES算法，加密
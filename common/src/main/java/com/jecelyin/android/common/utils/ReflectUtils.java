@@ -0,0 +1,29 @@
+package com.jecelyin.android.common.utils;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public class ReflectUtils {
+    private static final Map<Class<?>, Type> superclassTypeArguments = new ConcurrentHashMap<>();
+
+    /**
+     * 返回直接父类的第一个泛型参数，每个类只反射一次。
+     * 缓存后每次返回同一个Type实例，fastjson按Type查找解析器时也能直接命中它自己的缓存
+     */
+    public static Type getSuperclassTypeArgument(Class<?> clazz) {
+        Type type = superclassTypeArguments.get(clazz);
+        if(type == null) {
+            Type superClass = clazz.getGenericSuperclass();
+            if(!(superClass instanceof ParameterizedType))
+                throw new IllegalArgumentException(clazz.getName() + " is missing type parameter");
+            type = ((ParameterizedType) superClass).getActualTypeArguments()[0];
+            superclassTypeArguments.put(clazz, type);
+        }
+        return type;
+    }
+}
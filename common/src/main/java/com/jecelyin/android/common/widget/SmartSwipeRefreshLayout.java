@@ -7,6 +7,7 @@ import android.graphics.drawable.Drawable;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.RecyclerView.RecycledViewPool;
 import android.text.SpannableStringBuilder;
 import android.text.Spanned;
 import android.text.TextUtils;
@@ -27,6 +28,9 @@ import com.mugen.Mugen;
 import com.mugen.MugenCallbacks;
 import com.mugen.attachers.BaseAttacher;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * @author Jecelyin <jecelyin@gmail.com>
  */
@@ -210,6 +214,31 @@ public class SmartSwipeRefreshLayout extends FrameLayout {
         }
     }
 
+    /**
+     * 与同一个scope下相同key的列表共用视图回收池，如 TabViewPager 中每个tab使用相同Adapter类型的列表，
+     * 切换tab时直接复用其它tab回收的视图，不需要重新inflate。需要在 {@link #setLayoutManager} 之后调用
+     * @param scope 共用池的范围，一般是ViewPager，池随着它释放
+     * @param key 视图类型相同的列表使用相同的key，如Adapter的类
+     */
+    @SuppressWarnings("unchecked")
+    public void setSharedViewPool(View scope, Object key) {
+        Map<Object, RecycledViewPool> pools = (Map<Object, RecycledViewPool>) scope.getTag(R.id.shared_view_pools);
+        if(pools == null) {
+            pools = new HashMap<>();
+            scope.setTag(R.id.shared_view_pools, pools);
+        }
+        RecycledViewPool pool = pools.get(key);
+        if(pool == null) {
+            pool = new RecycledViewPool();
+            pools.put(key, pool);
+        }
+        //tab被移除时把视图放回池中，否则只会随着RecyclerView一起释放
+        RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+        if(layoutManager instanceof LinearLayoutManager)
+            ((LinearLayoutManager) layoutManager).setRecycleChildrenOnDetach(true);
+        recyclerView.setRecycledViewPool(pool);
+    }
+
     public LoadMoreAdapter getAdapter() {
         return (LoadMoreAdapter)recyclerView.getAdapter();
     }
@@ -0,0 +1,105 @@
+package com.jecelyin.android.common.adapter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ListDiffTest {
+
+    /** 数据为 "键:内容"，null键写作 "?:内容" */
+    private static final ListDiff.Callback<String> CALLBACK = new ListDiff.Callback<String>() {
+        @Override
+        public Object getKey(String item) {
+            String key = item.substring(0, item.indexOf(':'));
+            return "?".equals(key) ? null : key;
+        }
+
+        @Override
+        public boolean areContentsTheSame(String oldItem, String newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    /**
+     * 把操作依次应用到旧列表上，结果应该与新列表相同，修改的位置记为新数据
+     */
+    private static List<String> apply(List<String> oldList, List<String> newList, ListDiff diff) {
+        List<String> result = new ArrayList<>(oldList);
+        for (int[] op : diff.ops) {
+            switch (op[0]) {
+                case ListDiff.INSERT:
+                    for (int i = 0; i < op[2]; i++) {
+                        result.add(op[1] + i, null);
+                    }
+                    break;
+                case ListDiff.REMOVE:
+                    for (int i = 0; i < op[2]; i++) {
+                        result.remove(op[1]);
+                    }
+                    break;
+                case ListDiff.CHANGE:
+                    for (int i = 0; i < op[2]; i++) {
+                        result.set(op[1] + i, null);
+                    }
+                    break;
+            }
+        }
+        //插入和修改的位置需要从新列表重新绑定
+        for (int i = 0; i < result.size(); i++) {
+            if(result.get(i) == null) {
+                result.set(i, newList.get(i));
+            }
+        }
+        return result;
+    }
+
+    private static ListDiff check(List<String> oldList, List<String> newList) {
+        ListDiff diff = ListDiff.compute(oldList, newList, CALLBACK);
+        assertEquals(newList, apply(oldList, newList, diff));
+        return diff;
+    }
+
+    @Test
+    public void sameListHasNoOps() {
+        List<String> list = Arrays.asList("1:a", "2:b", "3:c");
+        assertTrue(check(list, new ArrayList<>(list)).isEmpty());
+    }
+
+    @Test
+    public void refreshedFirstPage() {
+        ListDiff diff = check(Arrays.asList("3:c", "4:d", "5:e"),
+                Arrays.asList("1:a", "2:b", "3:c", "4:d"));
+        assertEquals(2, diff.ops.size());
+        assertArrayEquals(new int[]{ListDiff.INSERT, 0, 2}, diff.ops.get(0));
+        assertArrayEquals(new int[]{ListDiff.REMOVE, 4, 1}, diff.ops.get(1));
+    }
+
+    @Test
+    public void changedContentIsChange() {
+        ListDiff diff = check(Arrays.asList("1:a", "2:b", "3:c"),
+                Arrays.asList("1:a", "2:B", "3:C"));
+        assertEquals(1, diff.ops.size());
+        assertArrayEquals(new int[]{ListDiff.CHANGE, 1, 2}, diff.ops.get(0));
+    }
+
+    @Test
+    public void movedAndDuplicateKeys() {
+        check(Arrays.asList("1:a", "2:b", "3:c", "4:d"), Arrays.asList("4:d", "2:b", "1:a", "3:c"));
+        check(Arrays.asList("1:a", "1:a", "2:b"), Arrays.asList("2:b", "1:a", "1:x", "1:a"));
+        check(Arrays.asList("1:a", "2:b"), new ArrayList<String>());
+        check(new ArrayList<String>(), Arrays.asList("1:a", "2:b"));
+    }
+
+    @Test
+    public void nullKeysNeverMatch() {
+        ListDiff diff = check(Arrays.asList("1:a", "?:x", "2:b"), Arrays.asList("?:x", "1:a", "?:y", "2:b"));
+        for (int[] op : diff.ops) {
+            assertNotEquals(ListDiff.CHANGE, op[0]);
+        }
+        check(Arrays.asList("?:x", "?:y"), Arrays.asList("?:x", "?:y"));
+    }
+}
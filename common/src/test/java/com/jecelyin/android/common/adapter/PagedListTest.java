@@ -0,0 +1,129 @@
+package com.jecelyin.android.common.adapter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PagedListTest {
+
+    private static class RecordingLoader implements PagedList.PageLoader {
+        final List<Integer> pages = new ArrayList<>();
+
+        @Override
+        public void loadPage(int page) {
+            pages.add(page);
+        }
+    }
+
+    private static List<String> page(String prefix, int count) {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(prefix + i);
+        }
+        return items;
+    }
+
+    @Test
+    public void pagesKeepPositions() {
+        PagedList<String> list = new PagedList<>(1, null);
+        list.addPage(page("a", 3));
+        list.addPage(Collections.<String>emptyList());
+        list.addAll(page("c", 2));
+
+        assertEquals(5, list.size());
+        assertEquals(3, list.getPageCount());
+        assertEquals("a2", list.get(2));
+        assertEquals("c0", list.get(3));
+        assertEquals(3, list.getPageOffset(3));
+        assertEquals(0, list.getPageSize(2));
+    }
+
+    @Test
+    public void farPagesAreReleasedAndReloaded() {
+        RecordingLoader loader = new RecordingLoader();
+        PagedList<String> list = new PagedList<>(1, loader);
+        for (int p = 0; p < 5; p++) {
+            list.addPage(page("p" + p + "-", 2));
+        }
+
+        list.loadAround(9);
+        assertFalse(list.isPageLoaded(1));
+        assertFalse(list.isPageLoaded(3));
+        assertTrue(list.isPageLoaded(4));
+        assertNull(list.get(0));
+        assertEquals(10, list.size());
+        assertTrue(loader.pages.isEmpty());
+
+        //回到第一页时加载它和相邻的页，加载中的页不重复请求
+        list.loadAround(1);
+        list.loadAround(3);
+        list.loadAround(1);
+        assertEquals(Arrays.asList(1, 2, 3), loader.pages);
+        assertFalse(list.isPageLoaded(5));
+
+        assertTrue(list.setPage(1, page("p0-", 2)));
+        assertEquals("p0-1", list.get(1));
+        //已有数据时不再替换
+        assertFalse(list.setPage(1, page("x", 2)));
+        assertFalse(list.setPage(9, page("x", 2)));
+    }
+
+    @Test
+    public void reloadedPageResizes() {
+        RecordingLoader loader = new RecordingLoader();
+        PagedList<String> list = new PagedList<>(1, loader);
+        for (int p = 0; p < 4; p++) {
+            list.addPage(page("p" + p + "-", 3));
+        }
+        list.loadAround(11);
+
+        //条数变化时不留null占位，后面的页跟着移动
+        assertTrue(list.setPage(1, Arrays.asList("x", "y", "z", "extra")));
+        assertTrue(list.setPage(2, Collections.singletonList("only")));
+        assertEquals(11, list.size());
+        assertEquals(4, list.getPageSize(1));
+        assertEquals(1, list.getPageSize(2));
+        assertEquals("extra", list.get(3));
+        assertEquals("only", list.get(4));
+        assertEquals(5, list.getPageOffset(3));
+        assertEquals("p2-0", list.get(5));
+        assertEquals("p3-2", list.get(10));
+        assertTrue(list.isPageLoaded(2));
+    }
+
+    @Test
+    public void reloadedEmptyPageKeepsPageNumbers() {
+        PagedList<String> list = new PagedList<>(1, null);
+        for (int p = 0; p < 4; p++) {
+            list.addPage(page("p" + p + "-", 2));
+        }
+        list.loadAround(5);
+
+        assertTrue(list.setPage(1, null));
+        assertEquals(4, list.getPageCount());
+        assertEquals(6, list.size());
+        assertEquals(0, list.getPageOffset(2));
+        assertEquals("p1-0", list.get(0));
+    }
+
+    @Test
+    public void failedPageIsRequestedAgain() {
+        RecordingLoader loader = new RecordingLoader();
+        PagedList<String> list = new PagedList<>(1, loader);
+        for (int p = 0; p < 4; p++) {
+            list.addPage(page("p" + p + "-", 2));
+        }
+        list.loadAround(7);
+        list.loadAround(0);
+        assertEquals(Arrays.asList(1, 2), loader.pages);
+
+        list.onPageLoadFailed(1);
+        list.loadAround(0);
+        assertEquals(Arrays.asList(1, 2, 1), loader.pages);
+    }
+}
@@ -0,0 +1,137 @@
+package com.jecelyin.android.common.api;
+
+import android.content.Context;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.jecelyin.android.common.http.RequestPriority;
+import com.jecelyin.android.common.http.RetryPolicy;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BatchApiTest {
+
+    static class TestBatchApi extends BatchApi {
+        @Override
+        protected String getPath() {
+            return "batch";
+        }
+
+        @Override
+        protected String getUserId(Context context) {
+            return null;
+        }
+
+        @Override
+        protected String getToken(Context context) {
+            return null;
+        }
+    }
+
+    static class SubApi extends AbstractApi {
+        private final String name;
+        private final RequestPriority priority;
+        private final RetryPolicy retryPolicy;
+        private final long readTimeout;
+
+        SubApi(String name, RequestPriority priority, RetryPolicy retryPolicy, long readTimeout) {
+            this.name = name;
+            this.priority = priority;
+            this.retryPolicy = retryPolicy;
+            this.readTimeout = readTimeout;
+        }
+
+        @Override
+        protected String getPath() {
+            return name;
+        }
+
+        @Override
+        public Method requestMethod() {
+            return Method.GET;
+        }
+
+        @Override
+        public Map<String, Object> getParams() {
+            Map<String, Object> params = super.getParams();
+            params.clear();
+            params.put("id", name);
+            return params;
+        }
+
+        @Override
+        public void handleParams(Context context, Map<String, Object> params) {
+            params.put("signed", new byte[]{'o', 'k'});
+        }
+
+        @Override
+        public RequestPriority getPriority() {
+            return priority;
+        }
+
+        @Override
+        public RetryPolicy getRetryPolicy() {
+            return retryPolicy;
+        }
+
+        @Override
+        public long getReadTimeout() {
+            return readTimeout;
+        }
+    }
+
+    private static JSONArray requests(BatchApi api) {
+        return (JSONArray) api.getParams().get("requests");
+    }
+
+    @Test
+    public void subApiParamsAreHandled() {
+        TestBatchApi batch = new TestBatchApi();
+        batch.setRequests(null, Arrays.<AbstractApi>asList(
+                new SubApi("a", RequestPriority.BACKGROUND, null, 0),
+                new SubApi("b", RequestPriority.BACKGROUND, null, 0)));
+
+        JSONArray requests = requests(batch);
+        assertEquals(2, requests.size());
+        JSONObject first = requests.getJSONObject(0);
+        assertEquals("a", first.getString("path"));
+        assertEquals("GET", first.getString("method"));
+        JSONObject params = first.getJSONObject("params");
+        assertEquals("a", params.getString("id"));
+        //byte[]按UTF-8文本放入
+        assertEquals("ok", params.get("signed"));
+    }
+
+    @Test
+    public void carriesHighestPriorityAndShortestTimeout() {
+        TestBatchApi batch = new TestBatchApi();
+        batch.setRequests(null, Arrays.<AbstractApi>asList(
+                new SubApi("a", RequestPriority.BACKGROUND, null, 0),
+                new SubApi("b", RequestPriority.PREFETCH, null, 8000),
+                new SubApi("c", RequestPriority.BACKGROUND, null, 3000)));
+
+        assertEquals(RequestPriority.PREFETCH, batch.getPriority());
+        assertEquals(3000, batch.getReadTimeout());
+        assertEquals(0, batch.getConnectTimeout());
+    }
+
+    @Test
+    public void retriesOnlyWhenEveryApiRetries() {
+        RetryPolicy once = new RetryPolicy(1, 100, 1000, true);
+        TestBatchApi batch = new TestBatchApi();
+        batch.setRequests(null, Arrays.<AbstractApi>asList(
+                new SubApi("a", RequestPriority.USER_VISIBLE, RetryPolicy.DEFAULT, 0),
+                new SubApi("b", RequestPriority.USER_VISIBLE, once, 0)));
+        assertSame(once, batch.getRetryPolicy());
+
+        batch.setRequests(null, Arrays.<AbstractApi>asList(
+                new SubApi("a", RequestPriority.USER_VISIBLE, RetryPolicy.DEFAULT, 0),
+                new SubApi("b", RequestPriority.USER_VISIBLE, null, 0)));
+        assertNull(batch.getRetryPolicy());
+    }
+}
@@ -0,0 +1,61 @@
+package com.jecelyin.android.common.http;
+
+import com.alibaba.fastjson.TypeReference;
+import com.jecelyin.android.common.bean.BaseBean;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BeanResponseTest {
+
+    public static class UserBean extends BaseBean {
+    }
+
+    private static class Listener<T extends BaseBean> extends BeanResponse<T> {
+        Listener() {
+        }
+
+        Listener(TypeReference<T> typeReference) {
+            super(typeReference);
+        }
+
+        @Override
+        public void onResponse(HttpClient httpClient, HttpResponse response, T bean) {
+        }
+    }
+
+    @Test
+    public void listenerTypeIsNotOverwritten() {
+        BeanResponse<BaseBean> listener = new Listener<BaseBean>() {};
+        listener.applyApiBeanType(UserBean.class);
+        assertEquals(BaseBean.class, listener.getType());
+    }
+
+    @Test
+    public void explicitTypeIsNotOverwritten() {
+        BeanResponse<BaseBean> listener = new Listener<>(new TypeReference<BaseBean>() {});
+        listener.applyApiBeanType(UserBean.class);
+        assertEquals(BaseBean.class, listener.getType());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void incompatibleApiTypeFailsFast() {
+        new Listener<UserBean>() {}.applyApiBeanType(BaseBean.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void incompatibleGenericApiTypeFailsFast() {
+        new Listener<UserBean>() {}.applyApiBeanType(new TypeReference<List<UserBean>>() {}.getType());
+    }
+
+    @Test
+    public void typeVariableUsesApiType() {
+        //在泛型类中创建的监听者无法得到实际类型
+        BeanResponse<UserBean> listener = new Listener<>();
+        listener.applyApiBeanType(UserBean.class);
+        assertEquals(UserBean.class, listener.getType());
+    }
+}
@@ -0,0 +1,59 @@
+package com.jecelyin.android.common.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CachePolicyTest {
+
+    @Test
+    public void freshWithinMaxAge() {
+        CachePolicy policy = new CachePolicy(60, 300);
+        assertTrue(policy.isFresh(0));
+        assertTrue(policy.isFresh(60 * 1000L));
+        assertFalse(policy.isFresh(60 * 1000L + 1));
+    }
+
+    @Test
+    public void usableWhileRevalidatingUntilMaxAgePlusStale() {
+        CachePolicy policy = new CachePolicy(60, 300);
+        assertTrue(policy.isUsableWhileRevalidating(60 * 1000L + 1));
+        assertTrue(policy.isUsableWhileRevalidating(360 * 1000L));
+        assertFalse(policy.isUsableWhileRevalidating(360 * 1000L + 1));
+    }
+
+    @Test
+    public void zeroStaleWindowNeverRevalidates() {
+        CachePolicy policy = new CachePolicy(60, 0);
+        assertFalse(policy.isFresh(61 * 1000L));
+        assertFalse(policy.isUsableWhileRevalidating(61 * 1000L));
+    }
+
+    @Test
+    public void revalidateAlwaysReturnsCacheThenValidates() {
+        CachePolicy policy = CachePolicy.REVALIDATE;
+        assertFalse(policy.isFresh(1));
+        assertTrue(policy.isUsableWhileRevalidating(1));
+        //一年前的缓存也先返回
+        assertTrue(policy.isUsableWhileRevalidating(365L * 24 * 3600 * 1000));
+    }
+
+    @Test
+    public void unknownAgeIsNeverUsable() {
+        //没有接收时间的缓存按 Long.MAX_VALUE 处理
+        assertFalse(CachePolicy.REVALIDATE.isFresh(Long.MAX_VALUE));
+        assertFalse(CachePolicy.REVALIDATE.isUsableWhileRevalidating(Long.MAX_VALUE));
+        CachePolicy forever = new CachePolicy(Integer.MAX_VALUE, Integer.MAX_VALUE);
+        assertFalse(forever.isUsableWhileRevalidating(Long.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeMaxAge() {
+        new CachePolicy(-1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeStaleWhileRevalidate() {
+        new CachePolicy(0, -1);
+    }
+}
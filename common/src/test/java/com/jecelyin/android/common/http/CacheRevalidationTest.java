@@ -0,0 +1,108 @@
+package com.jecelyin.android.common.http;
+
+import com.jecelyin.android.common.bean.BaseBean;
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.CacheControl;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+
+import static org.junit.Assert.*;
+
+public class CacheRevalidationTest {
+    private static final CachePolicy POLICY = new CachePolicy(1, 3600);
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        cacheDir = File.createTempFile("http", "cache");
+        cacheDir.delete();
+        client = new OkHttpClient();
+        client.setCache(new Cache(cacheDir, 1024 * 1024));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+        if(cacheDir.exists())
+            client.getCache().delete();
+    }
+
+    private HttpResponse execute(CacheControl cacheControl) throws Exception {
+        Request request = new Request.Builder().url(server.url("/list")).cacheControl(cacheControl).tag("t").build();
+        Response response = client.newCall(request).execute();
+        HttpResponse httpResponse = new HttpResponse(response, null, "t");
+        httpResponse.body().string();
+        return httpResponse;
+    }
+
+    @Test
+    public void notModifiedRenewsDiskCacheAge() throws Exception {
+        server.enqueue(new MockResponse().setHeader("ETag", "\"v1\"").setBody("{\"status\":\"ok\"}"));
+        server.enqueue(new MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED).setHeader("ETag", "\"v1\""));
+
+        execute(CacheControl.FORCE_NETWORK);
+        Thread.sleep(1100);
+        HttpResponse stale = execute(CacheControl.FORCE_CACHE);
+        assertFalse(POLICY.isFresh(CachePolicy.ageOf(stale)));
+        assertTrue(POLICY.isUsableWhileRevalidating(CachePolicy.ageOf(stale)));
+
+        HttpResponse revalidated = execute(CachePolicy.CONDITIONAL);
+        assertTrue(revalidated.isNotModified());
+        assertEquals("{\"status\":\"ok\"}", revalidated.body().string());
+        server.takeRequest();
+        RecordedRequest conditional = server.takeRequest();
+        assertEquals("\"v1\"", conditional.getHeader("If-None-Match"));
+
+        //304之后再次加载时缓存是新的，不再请求网络
+        HttpResponse second = execute(CacheControl.FORCE_CACHE);
+        assertTrue(POLICY.isFresh(CachePolicy.ageOf(second)));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void changedResponseIsNotNotModified() throws Exception {
+        server.enqueue(new MockResponse().setHeader("ETag", "\"v1\"").setBody("{\"status\":\"ok\"}"));
+        server.enqueue(new MockResponse().setHeader("ETag", "\"v2\"").setBody("{\"status\":\"changed\"}"));
+
+        execute(CacheControl.FORCE_NETWORK);
+        HttpResponse revalidated = execute(CachePolicy.CONDITIONAL);
+        assertFalse(revalidated.isNotModified());
+        assertEquals("{\"status\":\"changed\"}", revalidated.body().string());
+    }
+
+    @Test
+    public void notModifiedRenewsBeanCache() {
+        BeanCache beanCache = new BeanCache(1024 * 1024);
+        BeanCache.setInstance(beanCache);
+        try {
+            BaseBean bean = new BaseBean();
+            beanCache.put("key", new BeanCache.Entry(bean, System.currentTimeMillis() - 5000, 0));
+            assertFalse(POLICY.isFresh(beanCache.get("key").age()));
+
+            BeanResponse<BaseBean> listener = new HttpResponseBodyTest.TestBeanResponse();
+            listener.setCacheKey("key");
+            listener.refreshBeanCache();
+            BeanCache.Entry entry = beanCache.get("key");
+            assertSame(bean, entry.bean);
+            assertTrue(POLICY.isFresh(entry.age()));
+        } finally {
+            BeanCache.setInstance(null);
+        }
+    }
+}
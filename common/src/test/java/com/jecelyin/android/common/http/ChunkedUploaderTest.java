@@ -0,0 +1,210 @@
+package com.jecelyin.android.common.http;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ChunkedUploaderTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private MockWebServer server;
+    private File file;
+    private final OkHttpClient client = new OkHttpClient();
+    private final Map<String, Long> saved = new HashMap<>();
+
+    /** 直接用OkHttp同步发送，不经过HttpClient */
+    private final ChunkedUploader.Sender sender = new ChunkedUploader.Sender() {
+        @Override
+        public void send(Request request, RequestPriority priority, OnHttpResponseListener<Object> listener) {
+            try {
+                Response response = client.newCall(request).execute();
+                listener.onResponse(null, new HttpResponse(response, null, (String) request.tag()));
+            } catch (IOException e) {
+                listener.onFailure(null, null, e);
+            }
+        }
+
+        @Override
+        public void cancel(String tag) {
+            client.cancel(tag);
+        }
+    };
+
+    private final ChunkedUploader.OffsetStore offsets = new ChunkedUploader.OffsetStore() {
+        @Override
+        public synchronized long get(String uploadId) {
+            Long offset = saved.get(uploadId);
+            return offset == null ? 0 : offset;
+        }
+
+        @Override
+        public synchronized void put(String uploadId, long offset) {
+            saved.put(uploadId, offset);
+        }
+
+        @Override
+        public synchronized void remove(String uploadId) {
+            saved.remove(uploadId);
+        }
+    };
+
+    private static class Result implements ChunkedUploader.Callback {
+        final CountDownLatch done = new CountDownLatch(1);
+        long uploaded;
+        String response;
+        Exception error;
+
+        @Override
+        public void onProgress(long uploaded, long total) {
+            this.uploaded = uploaded;
+        }
+
+        @Override
+        public void onComplete(String response) {
+            this.response = response;
+            done.countDown();
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            error = e;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        file = File.createTempFile("upload", ".bin");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("0123456789".getBytes("UTF-8"));
+        out.close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+        file.delete();
+    }
+
+    private ChunkedUploader uploader() {
+        return new ChunkedUploader(sender, offsets, DIRECT, server.url("/upload").toString(), file).setChunkSize(4);
+    }
+
+    @Test
+    public void contentRangeOfChunks() {
+        assertEquals("bytes 0-511/1000", ChunkedUploader.contentRange(0, 512, 1000));
+        assertEquals("bytes 512-999/1000", ChunkedUploader.contentRange(512, 488, 1000));
+    }
+
+    @Test
+    public void contentRangeOfEmptyFile() {
+        assertEquals("bytes */0", ChunkedUploader.contentRange(0, 0, 0));
+    }
+
+    @Test
+    public void resumesFromPersistedOffset() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        ChunkedUploader uploader = uploader();
+        Result failed = new Result();
+        uploader.start(failed);
+        failed.await();
+        assertNotNull(failed.error);
+        //第一块已确认
+        assertEquals(4, offsets.get(uploader.getUploadId()));
+
+        server.enqueue(new MockResponse().setBody("ok"));
+        server.enqueue(new MockResponse().setBody("done"));
+        Result result = new Result();
+        uploader().start(result);
+        result.await();
+        assertNull(result.error);
+        assertEquals("done", result.response);
+        assertEquals(10, result.uploaded);
+
+        assertEquals("bytes 0-3/10", server.takeRequest().getHeader("Content-Range"));
+        assertEquals("bytes 4-7/10", server.takeRequest().getHeader("Content-Range"));
+        //重新开始时从断点继续，不再上传第一块
+        RecordedRequest resumed = server.takeRequest();
+        assertEquals("bytes 4-7/10", resumed.getHeader("Content-Range"));
+        assertTrue(resumed.getBody().readUtf8().contains("4567"));
+        assertEquals("bytes 8-9/10", server.takeRequest().getHeader("Content-Range"));
+        //完成后清除断点
+        assertTrue(saved.isEmpty());
+    }
+
+    @Test
+    public void cancelBetweenChunksKeepsOffset() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+        final ChunkedUploader uploader = uploader();
+        Result result = new Result() {
+            @Override
+            public void onProgress(long uploaded, long total) {
+                super.onProgress(uploaded, total);
+                uploader.cancel();
+            }
+        };
+        uploader.start(result);
+        result.await();
+
+        assertTrue(result.error instanceof CanceledException);
+        assertEquals(1, server.getRequestCount());
+        assertEquals(4, offsets.get(uploader.getUploadId()));
+    }
+
+    @Test
+    public void cancelInFlightChunk() throws Exception {
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        //收到第一块后暂不响应，上传在等待响应时被取消
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                received.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return new MockResponse().setBody("ok");
+            }
+        });
+        ChunkedUploader uploader = uploader();
+        Result result = new Result();
+        uploader.start(result);
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+        uploader.cancel();
+        result.await();
+        release.countDown();
+
+        assertNotNull(result.error);
+        assertEquals(0, result.uploaded);
+        assertTrue(saved.isEmpty());
+    }
+}
@@ -0,0 +1,91 @@
+package com.jecelyin.android.common.http;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConnectionPrewarmerTest {
+    private MockWebServer server;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        ConnectionPrewarmer.reset();
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient();
+        ConnectionPrewarmer.install(client);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+        ConnectionPrewarmer.reset();
+    }
+
+    private void firstRequest(String tag) throws Exception {
+        assertTrue(ConnectionPrewarmer.claimFirstRequest(tag));
+        Request request = new Request.Builder().url(server.url("/api")).tag(tag).build();
+        Response response = client.newCall(request).execute();
+        response.body().close();
+        ConnectionPrewarmer.recordFirstRequest(null, 20, false);
+    }
+
+    private void awaitPrewarm() throws InterruptedException {
+        for (int i = 0; i < 100 && ConnectionPrewarmer.getPrewarmMillis() < 0; i++) {
+            Thread.sleep(20);
+        }
+        assertTrue("prewarm did not finish", ConnectionPrewarmer.getPrewarmMillis() >= 0);
+    }
+
+    @Test
+    public void firstRequestReusesPrewarmedConnection() throws Exception {
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        ConnectionPrewarmer.prewarm(client, server.url("/").toString());
+        awaitPrewarm();
+        firstRequest("HttpRequest-1");
+
+        assertEquals("HEAD", server.takeRequest().getMethod());
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+        assertTrue(ConnectionPrewarmer.isFirstRequestReused());
+        assertTrue(ConnectionPrewarmer.report().contains("on prewarmed connection"));
+    }
+
+    @Test
+    public void firstRequestWithoutPrewarmIsBaseline() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        firstRequest("HttpRequest-1");
+
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+        assertFalse(ConnectionPrewarmer.isFirstRequestReused());
+        assertEquals(Long.MIN_VALUE, ConnectionPrewarmer.getSavedMillis(null));
+        assertTrue(ConnectionPrewarmer.report().contains("without prewarmed connection"));
+    }
+
+    @Test
+    public void onlyTheFirstRequestIsClaimed() throws Exception {
+        assertTrue(ConnectionPrewarmer.claimFirstRequest("HttpRequest-1"));
+        assertFalse(ConnectionPrewarmer.claimFirstRequest("HttpRequest-2"));
+    }
+
+    @Test
+    public void failedFirstRequestIsRecorded() {
+        assertTrue(ConnectionPrewarmer.claimFirstRequest("HttpRequest-1"));
+        ConnectionPrewarmer.recordFirstRequest(null, 35, true);
+
+        assertEquals(35, ConnectionPrewarmer.getFirstRequestMillis());
+        assertEquals(Long.MIN_VALUE, ConnectionPrewarmer.getSavedMillis(null));
+        assertTrue(ConnectionPrewarmer.report().contains("failed"));
+    }
+}
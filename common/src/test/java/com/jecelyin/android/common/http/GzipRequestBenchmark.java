@@ -0,0 +1,115 @@
+package com.jecelyin.android.common.http;
+
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import okio.Buffer;
+
+/**
+ * 按请求体大小分档测量 {@link GzipRequestInterceptor} 的CPU时间和实际发送的字节数，
+ * 用于确定 minSize、bufferLimit 和压缩级别。不是单元测试，手动运行 main：
+ * <pre>
+ * java -cp &lt;test classes&gt;:&lt;classes&gt;:&lt;okhttp, okio&gt; com.jecelyin.android.common.http.GzipRequestBenchmark [level]
+ * </pre>
+ * 请求体为JSON表单数据，字段名重复、值部分随机，接近接口的实际请求。
+ * 结果为JVM上的数据，设备上的CPU时间需要按比例估算，字节数与设备一致。
+ *
+ * @author Jecelyin <jecelyin@gmail.com>
+ */
+public class GzipRequestBenchmark {
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final int[] SIZES = {256, 1024, 4 * 1024, 16 * 1024, 64 * 1024, 256 * 1024, 1024 * 1024};
+    /** 每档至少处理的字节数，小请求体重复更多次 */
+    private static final long BYTES_PER_BUCKET = 64L * 1024 * 1024;
+
+    /**
+     * 把请求体写入内存，记录发送的字节数和是否压缩
+     */
+    private static class WireChain implements Interceptor.Chain {
+        private final Request request;
+        long wireBytes;
+        boolean gzip;
+
+        WireChain(Request request) {
+            this.request = request;
+        }
+
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        @Override
+        public Response proceed(Request request) throws IOException {
+            Buffer sink = new Buffer();
+            request.body().writeTo(sink);
+            wireBytes = sink.size();
+            gzip = "gzip".equals(request.header("Content-Encoding"));
+            return new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(200).build();
+        }
+
+        @Override
+        public Connection connection() {
+            return null;
+        }
+    }
+
+    static byte[] payload(int size, Random random) {
+        StringBuilder sb = new StringBuilder(size + 64);
+        sb.append('[');
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append("{\"id\":").append(random.nextInt(1000000))
+                    .append(",\"title\":\"item ").append(Long.toString(random.nextLong(), 36))
+                    .append("\",\"status\":\"0\",\"tags\":[\"news\",\"hot\"]},");
+        }
+        sb.setLength(size - 1);
+        sb.append(']');
+        return sb.toString().getBytes();
+    }
+
+    private static WireChain send(GzipRequestInterceptor interceptor, byte[] body) throws IOException {
+        Request request = new Request.Builder().url("http://localhost/").post(RequestBody.create(JSON, body)).build();
+        WireChain chain = new WireChain(request);
+        interceptor.intercept(chain);
+        return chain;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int level = args.length > 0 ? Integer.parseInt(args[0]) : Deflater.DEFAULT_COMPRESSION;
+        GzipRequestInterceptor interceptor = new GzipRequestInterceptor(GzipRequestInterceptor.DEFAULT_MIN_SIZE,
+                GzipRequestInterceptor.DEFAULT_BUFFER_LIMIT, level);
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        Random random = new Random(1);
+
+        System.out.println("level=" + level);
+        System.out.println(String.format("%10s %10s %8s %10s %12s %12s", "size", "wire", "ratio", "mode", "cpu us/op", "cpu ns/KB"));
+        for (int size : SIZES) {
+            byte[] body = payload(size, random);
+            int iterations = (int) Math.max(20, BYTES_PER_BUCKET / size);
+            //预热
+            for (int i = 0; i < iterations / 4; i++) {
+                send(interceptor, body);
+            }
+            WireChain chain = null;
+            long start = mx.getCurrentThreadCpuTime();
+            for (int i = 0; i < iterations; i++) {
+                chain = send(interceptor, body);
+            }
+            long cpuNanos = (mx.getCurrentThreadCpuTime() - start) / iterations;
+            String mode = !chain.gzip ? "identity" : size <= GzipRequestInterceptor.DEFAULT_BUFFER_LIMIT ? "buffered" : "streamed";
+            System.out.println(String.format("%10d %10d %7.1f%% %10s %12.1f %12.1f", size, chain.wireBytes,
+                    100.0 * chain.wireBytes / size, mode, cpuNanos / 1000.0, cpuNanos * 1024.0 / size));
+        }
+    }
+}
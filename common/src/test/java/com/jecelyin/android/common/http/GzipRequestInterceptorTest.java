@@ -0,0 +1,123 @@
+package com.jecelyin.android.common.http;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import okio.Buffer;
+import okio.GzipSource;
+
+import static org.junit.Assert.*;
+
+public class GzipRequestInterceptorTest {
+    private static final MediaType TEXT = MediaType.parse("text/plain; charset=utf-8");
+    private static final long MIN_SIZE = 100;
+    private static final long BUFFER_LIMIT = 4096;
+
+    private MockWebServer server;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient();
+        client.interceptors().add(new GzipRequestInterceptor(MIN_SIZE, BUFFER_LIMIT, Deflater.DEFAULT_COMPRESSION));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private RecordedRequest post(RequestBody body) throws Exception {
+        server.enqueue(new MockResponse());
+        Request request = new Request.Builder().url(server.url("/")).post(body).build();
+        client.newCall(request).execute().body().close();
+        return server.takeRequest();
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder(s.length() * count);
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    private static String gunzip(Buffer body) throws Exception {
+        Buffer result = new Buffer();
+        GzipSource source = new GzipSource(body);
+        while (source.read(result, 8192) != -1) {
+        }
+        return result.readUtf8();
+    }
+
+    @Test
+    public void smallBodyIsSentAsIs() throws Exception {
+        RecordedRequest request = post(RequestBody.create(TEXT, repeat("a", (int) MIN_SIZE - 1)));
+        assertNull(request.getHeader("Content-Encoding"));
+        assertEquals(MIN_SIZE - 1, request.getBodySize());
+    }
+
+    @Test
+    public void compressedContentTypeIsSentAsIs() throws Exception {
+        RecordedRequest request = post(RequestBody.create(MediaType.parse("image/jpeg"), repeat("a", 2000)));
+        assertNull(request.getHeader("Content-Encoding"));
+        assertEquals(2000, request.getBodySize());
+    }
+
+    @Test
+    public void bodyWithinBufferLimitHasContentLength() throws Exception {
+        String text = repeat("hello gzip ", 200);
+        RecordedRequest request = post(RequestBody.create(TEXT, text));
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        assertNull(request.getHeader("Transfer-Encoding"));
+        assertTrue(request.getBodySize() < text.length());
+        assertEquals(String.valueOf(request.getBodySize()), request.getHeader("Content-Length"));
+        assertEquals(text, gunzip(request.getBody()));
+    }
+
+    @Test
+    public void incompressibleBodyWithinBufferLimitIsSentAsIs() throws Exception {
+        byte[] random = new byte[2000];
+        new Random(1).nextBytes(random);
+        RecordedRequest request = post(RequestBody.create(TEXT, random));
+        assertNull(request.getHeader("Content-Encoding"));
+        assertEquals(random.length, request.getBodySize());
+    }
+
+    @Test
+    public void bodyOverBufferLimitIsStreamed() throws Exception {
+        String text = repeat("hello gzip ", 1000);
+        assertTrue(text.length() > BUFFER_LIMIT);
+        RecordedRequest request = post(RequestBody.create(TEXT, text));
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        assertEquals("chunked", request.getHeader("Transfer-Encoding"));
+        assertEquals(text, gunzip(request.getBody()));
+    }
+
+    @Test
+    public void alreadyEncodedBodyIsSentAsIs() throws Exception {
+        server.enqueue(new MockResponse());
+        Request request = new Request.Builder().url(server.url("/"))
+                .header("Content-Encoding", "br")
+                .post(RequestBody.create(TEXT, repeat("a", 2000)))
+                .build();
+        client.newCall(request).execute().body().close();
+        RecordedRequest recorded = server.takeRequest();
+        assertEquals("br", recorded.getHeader("Content-Encoding"));
+        assertEquals(2000, recorded.getBodySize());
+    }
+}
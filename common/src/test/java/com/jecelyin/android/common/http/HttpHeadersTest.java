@@ -0,0 +1,90 @@
+package com.jecelyin.android.common.http;
+
+import com.squareup.okhttp.Headers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HttpHeadersTest {
+
+    /** 超过阈值，查找走哈希索引 */
+    private static HttpHeaders indexed() {
+        return new HttpHeaders.Builder()
+                .add("Content-Type", "application/json")
+                .add("Set-Cookie", "a=1")
+                .add("ETag", "\"v1\"")
+                .add("Set-Cookie", "b=2")
+                .add("Cache-Control", "max-age=60")
+                .add("Date", "Sun, 18 Oct 2026 00:00:00 GMT")
+                .add("Vary", "Accept-Encoding")
+                .add("Set-Cookie", "c=3")
+                .add("X-Request-Id", "42")
+                .add("etag", "\"v2\"")
+                .build();
+    }
+
+    @Test
+    public void indexedLookupIsCaseInsensitive() {
+        HttpHeaders headers = indexed();
+        assertEquals("application/json", headers.get("content-type"));
+        assertEquals("42", headers.get("X-REQUEST-ID"));
+        //同名时返回最后一个
+        assertEquals("\"v2\"", headers.get("ETag"));
+        assertNull(headers.get("Location"));
+    }
+
+    @Test
+    public void indexedValuesKeepMessageOrder() {
+        HttpHeaders headers = indexed();
+        assertEquals(Arrays.asList("a=1", "b=2", "c=3"), headers.values("set-cookie"));
+        assertEquals(Arrays.asList("\"v1\"", "\"v2\""), headers.values("ETAG"));
+        assertEquals(Collections.<String>emptyList(), headers.values("Location"));
+    }
+
+    @Test
+    public void indexChainsManyNames() {
+        HttpHeaders.Builder builder = new HttpHeaders.Builder();
+        for (int i = 0; i < 40; i++) {
+            builder.add("X-Field-" + (i % 13), String.valueOf(i));
+        }
+        HttpHeaders headers = builder.build();
+        for (int n = 0; n < 13; n++) {
+            List<String> expected = new ArrayList<>();
+            for (int i = n; i < 40; i += 13) {
+                expected.add(String.valueOf(i));
+            }
+            assertEquals(expected, headers.values("x-field-" + n));
+            assertEquals(expected.get(expected.size() - 1), headers.get("X-FIELD-" + n));
+        }
+    }
+
+    @Test
+    public void wrappedOkHttpHeadersUseIndex() {
+        Headers.Builder builder = new Headers.Builder();
+        for (int i = 0; i < 12; i++) {
+            builder.add("Set-Cookie", "k" + i + "=v");
+        }
+        builder.add("Content-Length", "10");
+        HttpHeaders headers = HttpHeaders.of(builder.build());
+        assertEquals(12, headers.values("set-cookie").size());
+        assertEquals("k0=v", headers.values("SET-COOKIE").get(0));
+        assertEquals("10", headers.get("content-length"));
+    }
+
+    @Test
+    public void smallHeadersScanLinearly() {
+        HttpHeaders headers = new HttpHeaders.Builder()
+                .add("Retry-After", " 3 ")
+                .add("Set-Cookie", "a=1")
+                .add("set-cookie", "b=2")
+                .build();
+        assertEquals("3", headers.get("retry-after"));
+        assertEquals(Arrays.asList("a=1", "b=2"), headers.values("Set-Cookie"));
+    }
+}
@@ -0,0 +1,71 @@
+package com.jecelyin.android.common.http;
+
+import com.alibaba.fastjson.JSONObject;
+import com.squareup.okhttp.Request;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class HttpMetricsTest {
+
+    private static Request request(String path) {
+        return new Request.Builder().url("http://example.com" + path).build();
+    }
+
+    private static RequestMetrics record(HttpMetrics metrics, String name, String path, long ttfb, Exception error) {
+        RequestMetrics m = metrics.start(name, request(path), 0);
+        m.ttfbMillis = ttfb;
+        if(error != null)
+            m.fail(error);
+        else
+            m.finish();
+        return m;
+    }
+
+    @Test
+    public void exportGroupsByName() {
+        HttpMetrics metrics = new HttpMetrics();
+        record(metrics, "ListApi", "/list", 100, null);
+        record(metrics, "ListApi", "/list", 300, null);
+        record(metrics, "ListApi", "/list", -1, new IOException());
+
+        JSONObject list = metrics.export().getJSONObject("ListApi");
+        assertEquals(1, list.getIntValue("errors"));
+        JSONObject ttfb = list.getJSONObject("ttfb");
+        assertEquals(2, ttfb.getIntValue("count"));
+        assertEquals(200, ttfb.getLongValue("mean"));
+        assertEquals(300, ttfb.getLongValue("max"));
+        //失败的请求不计入总耗时
+        assertEquals(2, list.getJSONObject("total").getIntValue("count"));
+        //没有记录的阶段不导出
+        assertFalse(list.containsKey("dns"));
+    }
+
+    @Test
+    public void pathsWithIdsShareOneName() {
+        assertEquals("/user/{id}/posts", HttpMetrics.normalizePath("/user/123/posts"));
+        assertEquals("/file/{id}", HttpMetrics.normalizePath("/file/3f2504e0-4f89-11d3-9a0c-0305e82c3301"));
+        assertEquals("/v2/list/", HttpMetrics.normalizePath("/v2/list/"));
+
+        HttpMetrics metrics = new HttpMetrics();
+        record(metrics, null, "/user/1/posts", 10, null);
+        record(metrics, null, "/user/2/posts", 10, null);
+        JSONObject export = metrics.export();
+        assertEquals(1, export.size());
+        assertEquals(2, export.getJSONObject("/user/{id}/posts").getJSONObject("ttfb").getIntValue("count"));
+    }
+
+    @Test
+    public void namesAreCapped() {
+        HttpMetrics metrics = new HttpMetrics();
+        for (int i = 0; i < HttpMetrics.MAX_NAMES + 50; i++) {
+            record(metrics, null, "/search/q" + i, 10, null);
+        }
+        JSONObject export = metrics.export();
+        assertEquals(HttpMetrics.MAX_NAMES + 1, export.size());
+        assertEquals(50, export.getJSONObject(HttpMetrics.OTHER).getJSONObject("ttfb").getIntValue("count"));
+    }
+}
@@ -0,0 +1,119 @@
+package com.jecelyin.android.common.http;
+
+import com.jecelyin.android.common.bean.BaseBean;
+import com.jecelyin.android.common.utils.L;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.ResponseBody;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import static org.junit.Assert.*;
+
+public class HttpResponseBodyTest {
+    private static final String JSON = "{\"status\":\"ok\",\"message\":\"hi\"}";
+
+    static class TestBeanResponse extends BeanResponse<BaseBean> {
+        @Override
+        public void onResponse(HttpClient httpClient, HttpResponse response, BaseBean bean) {
+        }
+    }
+
+    @After
+    public void tearDown() {
+        L.debug = false;
+    }
+
+    private static HttpResponseBody body(String content, final AtomicBoolean closed) {
+        Buffer buffer = new Buffer().writeUtf8(content);
+        final BufferedSource source = Okio.buffer(new ForwardingSource(buffer) {
+            @Override
+            public void close() throws IOException {
+                closed.set(true);
+                super.close();
+            }
+        });
+        return new HttpResponseBody(ResponseBody.create(MediaType.parse("application/json"), content.length(), source));
+    }
+
+    private static HttpResponse response(HttpResponseBody body) {
+        return new HttpResponse.Builder()
+                .request(new HttpRequest(new Request.Builder().url("http://example.com/").build(), null, "t"))
+                .code(200)
+                .body(body)
+                .build();
+    }
+
+    @Test
+    public void unreadBodyIsClosedAfterListener() {
+        AtomicBoolean closed = new AtomicBoolean();
+        HttpResponseBody body = body(JSON, closed);
+        body.closeUnlessRetained();
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void retainedBodyStaysOpen() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        HttpResponseBody body = body(JSON, closed);
+        body.retain();
+        body.closeUnlessRetained();
+        assertFalse(closed.get());
+        assertEquals(JSON, body.string());
+    }
+
+    @Test
+    public void bodyReadInListenerStaysReadable() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        HttpResponseBody body = body(JSON, closed);
+        assertEquals(JSON, body.string());
+        body.closeUnlessRetained();
+        assertEquals(JSON, new String(body.bytes(), "UTF-8"));
+    }
+
+    private static void assertConsumedAfterParse(boolean debug) throws Exception {
+        L.debug = debug;
+        HttpResponseBody body = body(JSON, new AtomicBoolean());
+        BaseBean bean = new TestBeanResponse().parseBean(response(body));
+        assertEquals("hi", bean.getMessage());
+        assertEquals(JSON.length(), body.byteCount());
+        try {
+            body.string();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void parsedBodyIsConsumedInReleaseAndDebug() throws Exception {
+        assertConsumedAfterParse(false);
+        assertConsumedAfterParse(true);
+    }
+
+    @Test
+    public void keepBodyLeavesBodyReadable() throws Exception {
+        HttpResponseBody body = body(JSON, new AtomicBoolean());
+        BeanResponse<BaseBean> listener = new TestBeanResponse().setKeepBody(true);
+        assertEquals("hi", listener.parseBean(response(body)).getMessage());
+        assertEquals(JSON, body.string());
+    }
+
+    @Test
+    public void sharedBodyIsNotDiscarded() throws Exception {
+        L.debug = true;
+        HttpResponseBody body = body(JSON, new AtomicBoolean());
+        body.readBytes();
+        new TestBeanResponse().parseBean(response(body));
+        new TestBeanResponse().parseBean(response(body));
+        assertEquals(JSON, body.string());
+    }
+}
@@ -0,0 +1,59 @@
+package com.jecelyin.android.common.http;
+
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class HttpResponseTest {
+
+    @Test
+    public void builtResponseKeepsItsRequest() {
+        HttpRequest request = new HttpRequest("http://example.com/api", "GET", null, null, "HttpRequest-1");
+        HttpResponse response = new HttpResponse.Builder().request(request).code(200).build();
+        assertSame(request, response.request());
+        assertEquals("http://example.com/api", response.url());
+        assertTrue(response.toString().contains("url=http://example.com/api"));
+    }
+
+    @Test
+    public void wrappedResponseCreatesRequestOnce() {
+        Request request = new Request.Builder().url("http://example.com/api?id=1").tag("HttpRequest-1").build();
+        Response raw = new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .body(ResponseBody.create(null, "{}"))
+                .build();
+        HttpResponse response = new HttpResponse(raw, null, "HttpRequest-1");
+        assertEquals("http://example.com/api?id=1", response.url());
+        HttpRequest httpRequest = response.request();
+        assertNotNull(httpRequest);
+        assertSame(httpRequest, response.request());
+        assertEquals("http://example.com/api?id=1", response.url());
+    }
+
+    @Test
+    public void byteParamsAreExposedAsText() throws Exception {
+        Map<String, Object> params = new HashMap<>();
+        params.put("params", "{\"id\":\"中\"}".getBytes("UTF-8"));
+        params.put("sign", "abc");
+        Request request = new Request.Builder().url("http://example.com/api").build();
+        HttpRequest httpRequest = new HttpRequest(request, params, "HttpRequest-1");
+        assertEquals("{\"id\":\"中\"}", httpRequest.body.get("params"));
+        assertEquals("abc", httpRequest.body.get("sign"));
+        //发送用的参数不变
+        assertTrue(params.get("params") instanceof byte[]);
+
+        Map<String, Object> text = new HashMap<>();
+        text.put("a", "b");
+        assertSame(text, HttpRequest.readableParams(text));
+    }
+}
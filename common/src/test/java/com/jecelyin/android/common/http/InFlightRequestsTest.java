@@ -0,0 +1,80 @@
+package com.jecelyin.android.common.http;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InFlightRequestsTest {
+
+    private static InFlightRequests.Subscriber subscriber(String tag) {
+        return new InFlightRequests.Subscriber(null, tag, null);
+    }
+
+    @Test
+    public void identicalRequestsJoinTheFirst() {
+        InFlightRequests.Group group = InFlightRequests.join("GET /a", subscriber("join-1"));
+        assertNotNull(group);
+        assertNull(InFlightRequests.join("GET /a", subscriber("join-2")));
+
+        List<InFlightRequests.Subscriber> subscribers = InFlightRequests.subscribers(group, true);
+        assertEquals(2, subscribers.size());
+        //请求结束后相同的请求重新发起
+        InFlightRequests.Group next = InFlightRequests.join("GET /a", subscriber("join-3"));
+        assertNotNull(next);
+        InFlightRequests.subscribers(next, true);
+    }
+
+    @Test
+    public void noJoinAfterCachedResponseWasDelivered() {
+        InFlightRequests.Group group = InFlightRequests.join("GET /b", subscriber("cached-1"));
+        assertNull(InFlightRequests.join("GET /b", subscriber("cached-2")));
+
+        //先分发缓存结果，网络验证还在进行
+        assertEquals(2, InFlightRequests.subscribers(group, false).size());
+        InFlightRequests.Group late = InFlightRequests.join("GET /b", subscriber("cached-3"));
+        assertNotNull(late);
+        assertNotSame(group, late);
+
+        //网络结果只通知收到过缓存结果的订阅者
+        assertEquals(2, InFlightRequests.subscribers(group, true).size());
+        assertEquals(1, InFlightRequests.subscribers(late, true).size());
+    }
+
+    @Test
+    public void lastCancelCancelsTheCall() {
+        InFlightRequests.Group group = InFlightRequests.join("GET /c", subscriber("cancel-1"));
+        assertNull(InFlightRequests.join("GET /c", subscriber("cancel-2")));
+
+        assertNull(InFlightRequests.cancel("cancel-1"));
+        assertEquals("cancel-1", InFlightRequests.cancel("cancel-2"));
+        assertTrue(InFlightRequests.subscribers(group, true).isEmpty());
+        //未合并的请求返回tag本身
+        assertEquals("other", InFlightRequests.cancel("other"));
+    }
+
+    @Test
+    public void cancelAfterCloseKeepsNewGroup() {
+        InFlightRequests.Group group = InFlightRequests.join("GET /d", subscriber("close-1"));
+        InFlightRequests.subscribers(group, false);
+        InFlightRequests.Group late = InFlightRequests.join("GET /d", subscriber("close-2"));
+
+        assertEquals("close-1", InFlightRequests.cancel("close-1"));
+        //旧请求组取消后新的请求组仍然可以加入
+        assertNull(InFlightRequests.join("GET /d", subscriber("close-3")));
+        assertEquals(2, InFlightRequests.subscribers(late, true).size());
+    }
+
+    @Test
+    public void initiatorCancelKeepsGroupWanted() {
+        InFlightRequests.Group group = InFlightRequests.join("GET /e", subscriber("retry-1"));
+        assertNull(InFlightRequests.join("GET /e", subscriber("retry-2")));
+
+        //发起者取消后仍需要为其它订阅者重试
+        assertNull(InFlightRequests.cancel("retry-1"));
+        assertTrue(InFlightRequests.hasSubscribers(group));
+        assertEquals("retry-1", InFlightRequests.cancel("retry-2"));
+        assertFalse(InFlightRequests.hasSubscribers(group));
+    }
+}
@@ -0,0 +1,87 @@
+package com.jecelyin.android.common.http;
+
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0, histogram.getMean());
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+        assertEquals(5, histogram.getPercentile(50));
+        assertEquals(9, histogram.getPercentile(90));
+        assertEquals(10, histogram.getPercentile(100));
+        //负数不记录
+        histogram.record(-1);
+        assertEquals(10, histogram.getCount());
+    }
+
+    @Test
+    public void percentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertBucket(500, histogram.getPercentile(50));
+        assertBucket(900, histogram.getPercentile(90));
+        assertBucket(990, histogram.getPercentile(99));
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500, histogram.getMean());
+    }
+
+    /**
+     * 返回所在桶的上界，不小于实际值，误差不超过约15%
+     */
+    private static void assertBucket(long expected, long actual) {
+        assertTrue(actual + " < " + expected, actual >= expected);
+        assertTrue(actual + " > " + expected, actual <= Math.ceil(expected * 1.15));
+    }
+
+    @Test
+    public void percentileNeverExceedsMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(101);
+        assertEquals(101, histogram.getPercentile(50));
+        assertEquals(101, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void valuesBeyondRangeUseMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(20 * 60 * 1000);
+        histogram.record(1);
+        assertEquals(1, histogram.getPercentile(50));
+        assertEquals(20 * 60 * 1000, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void exportAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(30);
+        JSONObject json = histogram.toJSON();
+        assertEquals(2, json.getIntValue("count"));
+        assertEquals(20, json.getLongValue("mean"));
+        assertEquals(10, json.getLongValue("p50"));
+        assertEquals(30, json.getLongValue("p99"));
+        assertEquals(30, json.getLongValue("max"));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
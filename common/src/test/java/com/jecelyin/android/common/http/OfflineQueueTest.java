@@ -0,0 +1,205 @@
+package com.jecelyin.android.common.http;
+
+import android.content.Context;
+
+import com.jecelyin.android.common.api.AbstractApi;
+import com.squareup.okhttp.FormEncodingBuilder;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OfflineQueueTest {
+
+    /** 每次处理参数生成新的签名 */
+    public static class SignedApi extends AbstractApi {
+        private static int signCount;
+
+        @Override
+        protected String getPath() {
+            return "/submit";
+        }
+
+        @Override
+        public Method requestMethod() {
+            return Method.POST;
+        }
+
+        @Override
+        public void handleParams(Context context, Map<String, Object> params) {
+            params.put("sign", "s" + (++signCount));
+        }
+    }
+
+    private MockWebServer server;
+    private File journal;
+
+    /** 直接用OkHttp同步发送，不经过HttpClient */
+    private final OfflineQueue.Sender sender = new OfflineQueue.Sender() {
+        private final OkHttpClient client = new OkHttpClient();
+
+        {
+            client.setRetryOnConnectionFailure(false);
+        }
+
+        @Override
+        public void send(String tag, String method, String url, HttpHeaders headers, Map<String, Object> params, OnHttpResponseListener<Object> listener) {
+            FormEncodingBuilder form = new FormEncodingBuilder();
+            for (Map.Entry<String, Object> e : params.entrySet()) {
+                form.add(e.getKey(), String.valueOf(e.getValue()));
+            }
+            Request.Builder builder = new Request.Builder().url(url).post(form.build());
+            for (int i = 0; i < headers.size(); i++) {
+                builder.addHeader(headers.name(i), headers.value(i));
+            }
+            Request request = builder.build();
+            try {
+                Response response = client.newCall(request).execute();
+                HttpResponse httpResponse = new HttpResponse(response, params, tag);
+                httpResponse.body().string();
+                listener.onResponse(null, httpResponse);
+            } catch (IOException e) {
+                listener.onFailure(null, null, e);
+            }
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        journal = File.createTempFile("http_queue", ".journal");
+        journal.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+        journal.delete();
+    }
+
+    private OfflineQueue newQueue() throws InterruptedException {
+        OfflineQueue queue = new OfflineQueue(null, journal, sender);
+        queue.restore();
+        await(queue);
+        return queue;
+    }
+
+    private static void await(OfflineQueue queue) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        queue.afterPendingWrites(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    private OfflineQueue.Entry entry(String key) {
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("id", key);
+        Map<String, Object> params = new HashMap<>(raw);
+        params.put("sign", "old");
+        return new OfflineQueue.Entry(key, "POST", server.url("/submit").toString(), params, SignedApi.class.getName(), raw);
+    }
+
+    private int journalLines() throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(journal));
+        try {
+            int lines = 0;
+            while (reader.readLine() != null) {
+                lines++;
+            }
+            return lines;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void journalIsReplayed() throws Exception {
+        OfflineQueue queue = newQueue();
+        queue.enqueue(entry("a"));
+        queue.enqueue(entry("b"));
+        queue.enqueue(entry("a"));
+        await(queue);
+        assertEquals(2, queue.size());
+
+        //重启后从日志恢复
+        assertEquals(2, newQueue().size());
+    }
+
+    @Test
+    public void flushResignsAndRecordsDone() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        OfflineQueue queue = newQueue();
+        queue.enqueue(entry("a"));
+        queue.enqueue(entry("b"));
+        queue.flush();
+        await(queue);
+
+        RecordedRequest first = server.takeRequest();
+        assertEquals("a", first.getHeader("Idempotency-Key"));
+        String body = first.getBody().readUtf8();
+        assertTrue(body, body.contains("id=a"));
+        //重新创建Api生成新的签名，不使用入队时的签名
+        assertFalse(body, body.contains("sign=old"));
+        assertTrue(body, body.contains("sign=s"));
+
+        //服务器错误留在队列中
+        assertEquals(1, queue.size());
+        assertEquals(1, newQueue().size());
+    }
+
+    @Test
+    public void networkFailureStopsFlush() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        OfflineQueue queue = newQueue();
+        queue.enqueue(entry("a"));
+        queue.enqueue(entry("b"));
+        queue.flush();
+        await(queue);
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals(2, newQueue().size());
+    }
+
+    @Test
+    public void journalIsCompacted() throws Exception {
+        int count = 70;
+        for (int i = 0; i < count; i++) {
+            server.enqueue(new MockResponse().setBody("{}"));
+        }
+        OfflineQueue queue = newQueue();
+        for (int i = 0; i < count; i++) {
+            queue.enqueue(entry("k" + i));
+        }
+        queue.flush();
+        await(queue);
+
+        assertEquals(0, queue.size());
+        //64条done之后重写日志，只剩下之后的记录
+        assertTrue(journalLines() <= 2 * (count - 64));
+        assertEquals(0, newQueue().size());
+    }
+}
@@ -0,0 +1,106 @@
+package com.jecelyin.android.common.http;
+
+import com.jecelyin.android.common.bean.BaseBean;
+import com.squareup.okhttp.Request;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RequestBatcherTest {
+
+    private static class RecordingResponse extends BeanResponse<BaseBean> {
+        BaseBean bean;
+        Exception error;
+
+        @Override
+        public void onResponse(HttpClient httpClient, HttpResponse response, BaseBean bean) {
+            this.bean = bean;
+        }
+
+        @Override
+        public void onFailure(HttpClient httpClient, HttpRequest request, Exception e) {
+            error = e;
+        }
+    }
+
+    private static HttpResponse response(String json) throws Exception {
+        return new HttpResponse.Builder()
+                .request(new HttpRequest(new Request.Builder().url("http://example.com/batch").build(), null, "t"))
+                .code(200)
+                .body(new HttpResponseBody(json.getBytes("UTF-8")))
+                .build();
+    }
+
+    private static List<RequestBatcher.Item> items(RecordingResponse... listeners) {
+        List<RequestBatcher.Item> items = new ArrayList<>();
+        for (int i = 0; i < listeners.length; i++) {
+            items.add(new RequestBatcher.Item("t" + i, null, listeners[i]));
+        }
+        return items;
+    }
+
+    /**
+     * 拆分后按顺序回调
+     */
+    private static void deliver(String json, RecordingResponse... listeners) throws Exception {
+        List<RequestBatcher.Item> items = items(listeners);
+        HttpResponse response = response(json);
+        List<BaseBean> beans = RequestBatcher.split(response, items);
+        assertEquals(listeners.length, beans.size());
+        for (int i = 0; i < listeners.length; i++) {
+            RequestBatcher.deliver(listeners[i], null, response, beans.get(i));
+        }
+    }
+
+    @Test
+    public void itemsAreDeliveredInOrder() throws Exception {
+        RecordingResponse a = new RecordingResponse();
+        RecordingResponse b = new RecordingResponse();
+        deliver("{\"status\":\"0\",\"data\":[{\"status\":\"0\",\"message\":\"a\"},{\"status\":\"ok\",\"message\":\"b\"}]}", a, b);
+
+        assertEquals("a", a.bean.getMessage());
+        assertEquals("b", b.bean.getMessage());
+        assertNull(a.error);
+        assertNull(b.error);
+    }
+
+    @Test
+    public void itemStatusFailureOnlyFailsThatItem() throws Exception {
+        RecordingResponse a = new RecordingResponse();
+        RecordingResponse b = new RecordingResponse();
+        deliver("{\"status\":\"0\",\"data\":[{\"status\":\"1\",\"errorMsg\":\"denied\"},{\"status\":\"0\",\"message\":\"b\"}]}", a, b);
+
+        assertNull(a.bean);
+        assertTrue(a.error instanceof BeanStatusException);
+        assertEquals("denied", a.error.getMessage());
+        assertEquals("b", b.bean.getMessage());
+    }
+
+    @Test
+    public void shortDataFailsMissingItems() throws Exception {
+        RecordingResponse a = new RecordingResponse();
+        RecordingResponse b = new RecordingResponse();
+        deliver("{\"status\":\"0\",\"data\":[{\"status\":\"0\",\"message\":\"a\"}]}", a, b);
+
+        assertEquals("a", a.bean.getMessage());
+        assertNull(b.bean);
+        assertNotNull(b.error);
+    }
+
+    @Test
+    public void missingDataFailsEveryItem() throws Exception {
+        RecordingResponse a = new RecordingResponse();
+        RecordingResponse b = new RecordingResponse();
+        deliver("{\"status\":\"1\",\"errorMsg\":\"busy\"}", a, b);
+        assertNotNull(a.error);
+        assertNotNull(b.error);
+
+        RecordingResponse c = new RecordingResponse();
+        deliver("not json", c);
+        assertNotNull(c.error);
+    }
+}
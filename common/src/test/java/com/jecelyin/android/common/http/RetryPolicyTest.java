@@ -0,0 +1,113 @@
+package com.jecelyin.android.common.http;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+
+    @After
+    public void tearDown() {
+        RetryPolicy.resetBudget();
+    }
+
+    @Test
+    public void backoffStaysWithinExponentialCap() {
+        RetryPolicy policy = new RetryPolicy(5, 500, 8000, false);
+        long[] caps = {500, 1000, 2000, 4000, 8000, 8000};
+        for (int attempt = 0; attempt < caps.length; attempt++) {
+            for (int i = 0; i < 200; i++) {
+                long delay = policy.backoffMillis(attempt);
+                assertTrue("attempt " + attempt + ": " + delay, delay >= 0 && delay < caps[attempt]);
+            }
+        }
+    }
+
+    @Test
+    public void backoffDoesNotOverflowForLargeAttempts() {
+        RetryPolicy policy = new RetryPolicy(100, 500, 8000, false);
+        long delay = policy.backoffMillis(70);
+        assertTrue(delay >= 0 && delay < 8000);
+    }
+
+    @Test
+    public void onlyIdempotentMethodsRetryByDefault() {
+        RetryPolicy policy = RetryPolicy.DEFAULT;
+        assertTrue(policy.canRetry("GET", 0));
+        assertTrue(policy.canRetry("HEAD", 1));
+        assertFalse(policy.canRetry("GET", 2));
+        assertFalse(policy.canRetry("POST", 0));
+        assertTrue(new RetryPolicy(1, 100, 100, true).canRetry("POST", 0));
+    }
+
+    @Test
+    public void retryableCodes() {
+        for (int code : new int[]{408, 429, 502, 503, 504}) {
+            assertTrue(String.valueOf(code), RetryPolicy.isRetryableCode(code));
+        }
+        for (int code : new int[]{200, 304, 400, 401, 404, 500}) {
+            assertFalse(String.valueOf(code), RetryPolicy.isRetryableCode(code));
+        }
+    }
+
+    @Test
+    public void retryAfterSeconds() {
+        RetryPolicy policy = new RetryPolicy(2, 500, 8000, false);
+        assertEquals(-1, policy.retryAfterMillis(null));
+        assertEquals(3000, policy.retryAfterMillis(" 3 "));
+        assertEquals(0, policy.retryAfterMillis("-5"));
+        assertEquals(8000, policy.retryAfterMillis("8"));
+        //超过最大等待时间时放弃重试
+        assertEquals(Long.MAX_VALUE, policy.retryAfterMillis("9"));
+        assertEquals(-1, policy.retryAfterMillis("soon"));
+    }
+
+    @Test
+    public void retryAfterHttpDate() {
+        RetryPolicy policy = new RetryPolicy(2, 500, 60000, false);
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+        long delay = policy.retryAfterMillis(format.format(new Date(System.currentTimeMillis() + 30000)));
+        assertTrue(String.valueOf(delay), delay > 25000 && delay <= 30000);
+        assertEquals(0, policy.retryAfterMillis(format.format(new Date(System.currentTimeMillis() - 30000))));
+        assertEquals(Long.MAX_VALUE, policy.retryAfterMillis(format.format(new Date(System.currentTimeMillis() + 3600000))));
+    }
+
+    @Test
+    public void budgetLimitsRetries() {
+        RetryPolicy.resetBudget();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(RetryPolicy.withdrawBudget());
+        }
+        assertFalse(RetryPolicy.withdrawBudget());
+
+        //每10个请求恢复一次重试
+        for (int i = 0; i < 9; i++) {
+            RetryPolicy.depositBudget();
+        }
+        assertFalse(RetryPolicy.withdrawBudget());
+        RetryPolicy.depositBudget();
+        assertTrue(RetryPolicy.withdrawBudget());
+        assertFalse(RetryPolicy.withdrawBudget());
+    }
+
+    @Test
+    public void budgetIsCapped() {
+        RetryPolicy.resetBudget();
+        for (int i = 0; i < 1000; i++) {
+            RetryPolicy.depositBudget();
+        }
+        int retries = 0;
+        while (RetryPolicy.withdrawBudget()) {
+            retries++;
+        }
+        assertEquals(10, retries);
+    }
+}
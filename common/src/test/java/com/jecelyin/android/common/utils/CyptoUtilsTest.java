@@ -0,0 +1,75 @@
+package com.jecelyin.android.common.utils;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * ApiV2签名由拼接字符串改为按字节计算后，签名和提交的数据需要与原来完全一致
+ */
+public class CyptoUtilsTest {
+    private static final String SIGN_KEY = "fangdr";
+
+    /** 原来的实现 */
+    private static String legacyMd5(String pass) throws Exception {
+        MessageDigest m = MessageDigest.getInstance("MD5");
+        byte[] data = pass.getBytes("UTF-8");
+        m.update(data, 0, data.length);
+        BigInteger i = new BigInteger(1, m.digest());
+        return String.format("%1$032x", i);
+    }
+
+    private static Map<String, Object> params() {
+        Map<String, Object> params = new HashMap<>();
+        params.put("keyword", "深圳 南山区");
+        params.put("page", 3);
+        params.put("emoji", "😀 \"quoted\" \\ slash");
+        JSONObject head = new JSONObject();
+        head.put("token", "abc");
+        head.put("time", "2016-01-01 00:00:00");
+        params.put("head", head);
+        return params;
+    }
+
+    @Test
+    public void jsonBytesMatchJsonString() throws Exception {
+        Map<String, Object> params = params();
+        assertArrayEquals(JSON.toJSONString(params).getBytes("UTF-8"), JSON.toJSONBytes(params));
+    }
+
+    @Test
+    public void signMatchesLegacySign() throws Exception {
+        Map<String, Object> params = params();
+        String legacy = legacyMd5(JSON.toJSONString(params) + SIGN_KEY);
+        String sign = CyptoUtils.md5(JSON.toJSONBytes(params), SIGN_KEY.getBytes("UTF-8"));
+        assertEquals(legacy, sign);
+    }
+
+    @Test
+    public void md5KeepsLeadingZeros() throws Exception {
+        //md5("jk8ssl") = 0000000018e6137ac2caab16074784a6
+        assertEquals("0000000018e6137ac2caab16074784a6", CyptoUtils.md5("jk8ssl"));
+        assertEquals(legacyMd5("jk8ssl"), CyptoUtils.md5("jk8ssl"));
+    }
+
+    @Test
+    public void md5OfPartsEqualsMd5OfWhole() throws Exception {
+        byte[] whole = "hello world".getBytes("UTF-8");
+        assertEquals(CyptoUtils.md5(whole), CyptoUtils.md5("hello ".getBytes("UTF-8"), "world".getBytes("UTF-8")));
+        assertEquals(legacyMd5(""), CyptoUtils.md5(new byte[0]));
+    }
+
+    @Test
+    public void toHex() {
+        assertEquals("00017f80ff", CyptoUtils.toHex(new byte[]{0, 1, 0x7f, (byte) 0x80, (byte) 0xff}));
+        assertEquals("", CyptoUtils.toHex(new byte[0]));
+    }
+}